@@ -0,0 +1,85 @@
+package app;
+
+import core.ActionHistory;
+import javafx.animation.AnimationTimer;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Batches UI updates posted from worker threads into one step per FX pulse,
+ * instead of one Platform.runLater per update. Workers queue history entries,
+ * row updates and progress on lock-free queues; an AnimationTimer drains
+ * them each frame, logging the entries with a single addAll. At most
+ * {@link #MAX_PER_PULSE} entries and row updates are handled per frame, and
+ * only the latest progress is shown, so frame cost stays bounded however
+ * fast results arrive.
+ */
+final class FxUpdateCoalescer {
+    static final int MAX_PER_PULSE = 500;
+
+    interface ProgressView {
+        void show(long done, long total, String message);
+    }
+
+    private record Progress(long done, long total, String message) {}
+
+    private final ActionHistory history;
+    private final ProgressView progressView;
+    private final Queue<ActionHistory.Entry> entries = new ConcurrentLinkedQueue<>();
+    private final Queue<Runnable> updates = new ConcurrentLinkedQueue<>();
+    private final AtomicReference<Progress> progress = new AtomicReference<>();
+    private final AnimationTimer timer = new AnimationTimer() {
+        @Override
+        public void handle(long now) {
+            drain(MAX_PER_PULSE);
+        }
+    };
+
+    FxUpdateCoalescer(ActionHistory history, ProgressView progressView) {
+        this.history = history;
+        this.progressView = progressView;
+    }
+
+    /** Starts draining once per pulse; FX thread. */
+    void start() {
+        timer.start();
+    }
+
+    /** Applies everything still queued and stops draining; FX thread. */
+    void stop() {
+        timer.stop();
+        drain(Integer.MAX_VALUE);
+    }
+
+    /** Queues a history entry; any thread. */
+    void log(ActionHistory.Entry entry) {
+        entries.add(entry);
+    }
+
+    /** Queues work for the FX thread, run in order with other updates; any thread. */
+    void update(Runnable update) {
+        updates.add(update);
+    }
+
+    /** Sets the progress to show on the next pulse, replacing any not yet shown; any thread. */
+    void progress(long done, long total, String message) {
+        progress.set(new Progress(done, total, message));
+    }
+
+    private void drain(int max) {
+        List<ActionHistory.Entry> batch = new ArrayList<>();
+        ActionHistory.Entry e;
+        while (batch.size() < max && (e = entries.poll()) != null) batch.add(e);
+        history.addAll(batch);
+
+        Runnable r;
+        for (int i = 0; i < max && (r = updates.poll()) != null; i++) r.run();
+
+        Progress p = progress.getAndSet(null);
+        if (p != null) progressView.show(p.done(), p.total(), p.message());
+    }
+}
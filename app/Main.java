@@ -22,14 +22,19 @@ import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
 
 public class Main extends Application {
     private final ConfigStore config = ConfigStore.getDefault();
     private AdbRunner adb;
     private DeviceManager deviceManager;
     private PackageScanner packageScanner;
+    private LabelResolver labelResolver;
     private final SimpleOemPackLoader oemPackLoader = new SimpleOemPackLoader(Path.of("oem-packs"));
-    private final ActionHistory history = new ActionHistory();
+    private final ActionHistory history = new ActionHistory(config.getInt("historyCapacity", ActionHistory.DEFAULT_CAPACITY));
+    private HistoryJournal historyJournal;
+    private JfrRecorder recorder;
 
     private final ListView<String> devicesList = new ListView<>();
     private final TableView<Row> appsTable = new TableView<>();
@@ -39,19 +44,66 @@ public class Main extends Application {
     private final ProgressBar progressBar = new ProgressBar(0);
     private final VBox detailsPane = new VBox(8);
     private final TableView<ActionHistory.Entry> historyTable = new TableView<>();
+    // Result of the last history filter (shown while the table isn't on the live log)
+    private List<ActionHistory.Entry> historyResults = List.of();
+
+    // History filter time ranges -> window in ms (0 = any time)
+    private static final Map<String, Long> HISTORY_RANGES = new LinkedHashMap<>();
+    static {
+        HISTORY_RANGES.put("Any time", 0L);
+        HISTORY_RANGES.put("Last hour", 3_600_000L);
+        HISTORY_RANGES.put("Last 24 hours", 86_400_000L);
+        HISTORY_RANGES.put("Last 7 days", 7 * 86_400_000L);
+        HISTORY_RANGES.put("Last 30 days", 30 * 86_400_000L);
+    }
+
+    // Export formats; the format follows the chosen file name, and .gz compresses
+    private static final List<FileChooser.ExtensionFilter> EXPORT_FILTERS = List.of(
+            new FileChooser.ExtensionFilter("CSV Files", "*.csv", "*.csv.gz"),
+            new FileChooser.ExtensionFilter("JSON Lines", "*.jsonl", "*.jsonl.gz"),
+            new FileChooser.ExtensionFilter("Text Files", "*.txt", "*.txt.gz"));
+
+    private static final List<TableExporter.Column<Row>> PACKAGE_COLUMNS = List.of(
+            new TableExporter.Column<>("pkg", "Package", Row::getPkg),
+            new TableExporter.Column<>("label", "Label", Row::getLabel),
+            new TableExporter.Column<>("type", "Type", Row::getType),
+            new TableExporter.Column<>("state", "State", r -> r.getInfo() != null ? r.getInfo().stateLabel() : ""),
+            new TableExporter.Column<>("risk", "Risk", Row::getRisk),
+            new TableExporter.Column<>("recommendedAction", "Recommended Action", Row::getAction));
+
+    // Rows are handed to the FX thread in chunks of this size while a scan streams in
+    private static final int ROW_BATCH = 200;
 
     private String currentSerial = null;
-    private Map<String, String[]> recommendations = new HashMap<>();
+    private long scanGeneration = 0;
+    // serial -> rows from that device's last scan, kept across device switches (FX thread only)
+    private final Map<String, Map<String, Row>> rowsBySerial = new HashMap<>();
+    private String displayedSerial;
+    // serial -> normalized manufacturer of the OEM pack its rows came from
+    private final Map<String, String> packKeyBySerial = new java.util.concurrent.ConcurrentHashMap<>();
+    private volatile OemPack recommendations = OemPack.EMPTY;
 
     @Override
     public void start(Stage stage) {
         stage.setTitle("Universal ADB Mobile Debloater");
 
+        if (config.getBoolean("jfrRecording")) {
+            try {
+                recorder = JfrRecorder.start(config.getConfigDir().resolve("recordings"));
+            } catch (Exception e) {
+                System.err.println("Could not start JFR recording: " + e.getMessage());
+            }
+        }
+
         // Initialize ADB with configured path
-        String adbPath = config.get("adbPath");
-        adb = new AdbRunner(adbPath.isBlank() ? "adb" : adbPath);
+        adb = createAdbRunner();
         deviceManager = new DeviceManager(adb);
-        packageScanner = new PackageScanner(adb);
+        packageScanner = createPackageScanner();
+        labelResolver = new LabelResolver(adb, config.getConfigDir().resolve(LabelResolver.CACHE_FILE));
+        historyJournal = new HistoryJournal(config.getConfigDir().resolve(HistoryJournal.DIR),
+                config.getInt("historySegmentKb", (int) (HistoryJournal.DEFAULT_SEGMENT_BYTES / 1024)) * 1024L,
+                config.getInt("historyMaxSegments", HistoryJournal.DEFAULT_MAX_SEGMENTS));
+        history.attachJournal(historyJournal);
 
     BorderPane root = new BorderPane();
     root.setTop(buildTopBar());
@@ -67,6 +119,42 @@ public class Main extends Application {
         stage.show();
 
         refreshDevices();
+        deviceManager.startWatching(event -> Platform.runLater(() -> onDeviceEvent(event)));
+        oemPackLoader.addReloadListener((packKey, pack) -> Platform.runLater(() -> onPackReloaded(packKey, pack)));
+        oemPackLoader.startWatching();
+    }
+
+    @Override
+    public void stop() {
+        if (deviceManager != null) deviceManager.stopWatching();
+        oemPackLoader.close();
+        if (adb != null) adb.close();
+        if (recorder != null) recorder.close();
+        if (historyJournal != null) historyJournal.close();
+    }
+
+    private AdbRunner createAdbRunner() {
+        String adbPath = config.get("adbPath");
+        String adbExe = adbPath.isBlank() ? "adb" : adbPath;
+        AdbRunner runner = "socket".equalsIgnoreCase(config.get("adbTransport"))
+                ? new AdbSocketRunner(adbExe)
+                : new AdbRunner(adbExe, config.getBoolean("adbShellSession"));
+        runner.setScheduler(new AdbScheduler(
+                config.getInt("adbPerDevicePermits", AdbScheduler.DEFAULT_PER_DEVICE),
+                config.getInt("adbGlobalPermits", AdbScheduler.DEFAULT_GLOBAL)));
+        // A TTL of 0 turns the read-only query cache off
+        int ttlSeconds = config.getInt("adbCacheTtlSeconds", (int) (AdbResultCache.DEFAULT_TTL_MS / 1000));
+        if (ttlSeconds > 0) {
+            runner.setCache(new AdbResultCache(ttlSeconds * 1000L,
+                    config.getInt("adbCacheMaxEntries", AdbResultCache.DEFAULT_MAX_ENTRIES)));
+        }
+        return runner;
+    }
+    
+    private PackageScanner createPackageScanner() {
+        PackageScanner.Mode mode = "dumpsys".equalsIgnoreCase(config.get("packageScanMode"))
+                ? PackageScanner.Mode.DUMPSYS : PackageScanner.Mode.LIST;
+        return new PackageScanner(adb, mode);
     }
     
     private void setupKeyboardShortcuts(Scene scene) {
@@ -214,6 +302,14 @@ public class Main extends Application {
     Label deviceHeader = new Label("📱 Connected Devices");
     deviceHeader.setStyle("-fx-font-size: 14px; -fx-font-weight: bold; -fx-text-fill: #1e3a8a; -fx-padding: 8px;");
     devicesList.setPrefWidth(280);
+    // Items are serials; show the model from the `devices -l` listing right away
+    devicesList.setCellFactory(list -> new ListCell<>() {
+        @Override
+        protected void updateItem(String serial, boolean empty) {
+            super.updateItem(serial, empty);
+            setText(empty || serial == null ? null : deviceManager.getListedDevice(serial).displayName());
+        }
+    });
         devicesList.getSelectionModel().selectedItemProperty().addListener((obs, o, n) -> onDeviceSelected(n));
     VBox.setVgrow(devicesList, Priority.ALWAYS);
     deviceBox.getChildren().addAll(deviceHeader, devicesList);
@@ -260,7 +356,11 @@ public class Main extends Application {
         typeCol.setCellValueFactory(param -> param.getValue().typeProperty());
         typeCol.setPrefWidth(100);
 
-    appsTable.getColumns().addAll(selCol, pkgCol, typeCol, riskCol, actionCol);
+        TableColumn<Row, String> stateCol = new TableColumn<>("State");
+        stateCol.setCellValueFactory(param -> param.getValue().stateProperty());
+        stateCol.setPrefWidth(100);
+
+    appsTable.getColumns().addAll(selCol, pkgCol, typeCol, stateCol, riskCol, actionCol);
     filteredData = new FilteredList<>(appsData, r -> true);
     appsTable.setItems(filteredData);
     appsTable.setColumnResizePolicy(TableView.CONSTRAINED_RESIZE_POLICY);
@@ -287,6 +387,10 @@ public class Main extends Application {
         timeCol.setCellValueFactory(param -> new javafx.beans.property.SimpleStringProperty(param.getValue().getTime()));
         timeCol.setPrefWidth(80);
         
+        TableColumn<ActionHistory.Entry, String> devCol = new TableColumn<>("Device");
+        devCol.setCellValueFactory(param -> new javafx.beans.property.SimpleStringProperty(param.getValue().getSerial()));
+        devCol.setPrefWidth(110);
+        
         TableColumn<ActionHistory.Entry, String> statusCol = new TableColumn<>("✓");
         statusCol.setCellValueFactory(param -> new javafx.beans.property.SimpleStringProperty(param.getValue().getStatus()));
         statusCol.setPrefWidth(40);
@@ -299,7 +403,9 @@ public class Main extends Application {
         detCol.setCellValueFactory(param -> new javafx.beans.property.SimpleStringProperty(param.getValue().getDetails()));
         detCol.setPrefWidth(300);
         
-    historyTable.getColumns().addAll(timeCol, statusCol, actCol, detCol);
+    historyTable.getColumns().addAll(timeCol, devCol, statusCol, actCol, detCol);
+    // The history view is read-only (a ring buffer in log order), so it isn't sortable
+    historyTable.getColumns().forEach(c -> c.setSortable(false));
     // Bind table to observable entries once for efficient incremental updates
     historyTable.setItems(history.getObservableEntries());
         historyTable.setPrefHeight(150);
@@ -307,9 +413,13 @@ public class Main extends Application {
         Button clearHistoryBtn = new Button("🗑 Clear History");
         clearHistoryBtn.setOnAction(e -> {
             history.clear();
-            historyTable.getItems().clear();
+            historyTable.setItems(history.getObservableEntries());
         });
-        clearHistoryBtn.setTooltip(new Tooltip("Clear all history entries"));
+        clearHistoryBtn.setTooltip(new Tooltip("Clear the history list (saved history stays searchable)"));
+        
+        Button deleteHistoryBtn = new Button("Delete Saved History...");
+        deleteHistoryBtn.setOnAction(e -> deleteSavedHistory());
+        deleteHistoryBtn.setTooltip(new Tooltip("Permanently delete the saved record of all actions"));
         
         Button exportHistoryBtn = new Button("💾 Export History");
         exportHistoryBtn.setOnAction(e -> exportHistory());
@@ -319,11 +429,37 @@ public class Main extends Application {
         historyLabel.setStyle("-fx-font-weight: bold; -fx-text-fill: #1e3a8a;");
         Region spacer = new Region();
         HBox.setHgrow(spacer, Priority.ALWAYS);
-        HBox historyToolbar = new HBox(10, historyLabel, spacer, clearHistoryBtn, exportHistoryBtn);
+        HBox historyToolbar = new HBox(10, historyLabel, spacer, clearHistoryBtn, deleteHistoryBtn, exportHistoryBtn);
         historyToolbar.setPadding(new Insets(5));
         historyToolbar.setStyle("-fx-background-color: #f9fafb; -fx-border-color: #e5e7eb; -fx-border-width: 0 0 1px 0;");
         
-        VBox historyBox = new VBox(5, historyToolbar, historyTable);
+        // Filter bar: searches all persisted history, not just what the table holds
+        TextField historyPkgField = new TextField();
+        historyPkgField.setPromptText("Package");
+        historyPkgField.setPrefWidth(200);
+        TextField historySerialField = new TextField();
+        historySerialField.setPromptText("Device serial");
+        historySerialField.setPrefWidth(120);
+        ComboBox<String> historyRange = new ComboBox<>(FXCollections.observableArrayList(HISTORY_RANGES.keySet()));
+        historyRange.getSelectionModel().selectFirst();
+        Runnable runHistoryFilter = () -> filterHistory(historyPkgField.getText(), historySerialField.getText(), historyRange.getValue());
+        historyPkgField.setOnAction(e -> runHistoryFilter.run());
+        historySerialField.setOnAction(e -> runHistoryFilter.run());
+        historyRange.setOnAction(e -> runHistoryFilter.run());
+        Button historyFilterBtn = new Button("Filter");
+        historyFilterBtn.setOnAction(e -> runHistoryFilter.run());
+        historyFilterBtn.setTooltip(new Tooltip("Find actions on a package and/or device across all saved history"));
+        Button historyShowAllBtn = new Button("Show All");
+        historyShowAllBtn.setOnAction(e -> {
+            historyPkgField.clear();
+            historySerialField.clear();
+            historyRange.getSelectionModel().selectFirst();
+            historyTable.setItems(history.getObservableEntries());
+        });
+        HBox historyFilterBar = new HBox(6, historyPkgField, historySerialField, historyRange, historyFilterBtn, historyShowAllBtn);
+        historyFilterBar.setPadding(new Insets(0, 5, 0, 5));
+        
+        VBox historyBox = new VBox(5, historyToolbar, historyFilterBar, historyTable);
         VBox.setVgrow(historyTable, Priority.ALWAYS);
         
         TabPane rightTabs = new TabPane();
@@ -361,6 +497,8 @@ public class Main extends Application {
     }
 
     private void refreshDevices() {
+        // An explicit refresh should always show fresh device state
+        if (adb.getCache() != null) adb.getCache().clear();
         showProgress(true);
         setStatus("Refreshing devices...");
         
@@ -385,7 +523,45 @@ public class Main extends Application {
             showProgress(false);
         });
         
-        new Thread(task).start();
+        adb.getScheduler().execute(task);
+    }
+
+    /**
+     * Applies a pushed device change to the device list. Only devices in the
+     * "device" state are listed, matching refreshDevices().
+     */
+    private void onDeviceEvent(DeviceWatcher.DeviceEvent event) {
+        ObservableList<String> items = devicesList.getItems();
+        String serial = event.serial();
+        boolean ready = "device".equals(event.state());
+        if (ready && !items.contains(serial)) {
+            items.add(serial);
+            setStatus("Device connected: " + serial);
+            if (devicesList.getSelectionModel().getSelectedItem() == null) {
+                devicesList.getSelectionModel().select(serial);
+            }
+        } else if (!ready && items.contains(serial)) {
+            items.remove(serial);
+            setStatus(event.change() == DeviceWatcher.Change.DETACHED
+                    ? "Device disconnected: " + serial
+                    : "Device " + serial + " is " + event.state());
+        } else if (!ready && event.state() != null) {
+            setStatus("Device " + serial + " is " + event.state()
+                    + ("unauthorized".equals(event.state()) ? " - accept the USB debugging prompt" : ""));
+        }
+    }
+
+    /** Applies a reloaded OEM pack to the rows of every scanned device of that manufacturer. */
+    private void onPackReloaded(String packKey, OemPack pack) {
+        for (Map.Entry<String, Map<String, Row>> e : rowsBySerial.entrySet()) {
+            if (!packKey.equals(packKeyBySerial.get(e.getKey()))) continue;
+            for (Row r : e.getValue().values()) r.setRecommendation(pack.getOrEmpty(r.getPkg()));
+        }
+        if (currentSerial != null && packKey.equals(packKeyBySerial.get(currentSerial))) {
+            recommendations = pack;
+            showPackageDetails(appsTable.getSelectionModel().getSelectedItem());
+        }
+        setStatus("OEM pack reloaded: " + packKey + " (" + pack.size() + " entries)");
     }
 
     private void onDeviceSelected(String serial) {
@@ -395,23 +571,57 @@ public class Main extends Application {
         showProgress(true);
         setStatus("Loading device info...");
         
+        // Rows from an earlier scan of this device (with their selections) are
+        // shown right away and then patched with the rescan's diff. Until a scan
+        // has completed there is no snapshot to diff against, so a scan still
+        // running (or one that failed) is superseded by a full one.
+        Map<String, Row> known = rowsBySerial.get(serial);
+        boolean incremental = known != null && !packageScanner.snapshot(serial).isEmpty();
+        if (!incremental) appsData.clear();
+        else if (!serial.equals(displayedSerial)) appsData.setAll(known.values());
+        displayedSerial = serial;
+        Map<String, Row> rows = incremental ? known : new LinkedHashMap<>();
+        if (!incremental) rowsBySerial.put(serial, rows);
+        long generation = ++scanGeneration;
         Task<Void> task = new Task<>() {
             private DeviceInfo info;
-            private List<PackageInfo> pkgs;
+            private int found;
+            private boolean stale;
+            private List<Row> pending = new ArrayList<>();
+            private final List<PackageInfo> unlabeled = new ArrayList<>();
             
             @Override
             protected Void call() {
                 try {
-                    info = deviceManager.getDeviceInfo(serial);
+                    info = deviceManager.getDeviceInfoAsync(serial).join();
                     updateMessage("Scanning packages for " + info.displayName());
                     
                     // Load recommendations for manufacturer
-                    recommendations = oemPackLoader.loadForManufacturer(info.manufacturer(), "-20251113.json");
+                    recommendations = oemPackLoader.loadForManufacturer(info.manufacturer());
+                    packKeyBySerial.put(serial, SimpleOemPackLoader.normalize(info.manufacturer()));
                     
-                    // Scan packages
-                    pkgs = packageScanner.listPackages(serial);
+                    ScanDiff diff;
+                    if (incremental) {
+                        diff = packageScanner.rescanAsync(serial, null).join();
+                        // A rescan that failed or came back empty keeps the rows and snapshot
+                        // already shown rather than passing for a device with no packages
+                        stale = diff.isFailed() || diff.total() == 0;
+                        if (!stale) applyDiff(diff);
+                    } else {
+                        // Stream packages into the table in batches as pm prints them
+                        diff = packageScanner.rescanAsync(serial, p -> {
+                            pending.add(createRow(p));
+                            if (pending.size() >= ROW_BATCH) publish();
+                        }).join();
+                        if (diff.isFailed()) {
+                            discardStreamedRows();
+                            throw new IllegalStateException("Package scan failed part way (see terminal output)");
+                        }
+                        publish();
+                    }
+                    found = stale ? packageScanner.snapshot(serial).size() : diff.total();
                     
-                    if (pkgs.isEmpty()) {
+                    if (found == 0) {
                         updateMessage("Warning: No packages found. Check ADB connection and device permissions.");
                     }
                 } catch (Exception e) {
@@ -421,11 +631,102 @@ public class Main extends Application {
                 }
                 return null;
             }
+
+            private Row createRow(PackageInfo p) {
+                Row row = new Row(p.pkg(), p.systemApp(), recommendations.getOrEmpty(p.pkg()));
+                row.setLabel(labelFor(p));
+                row.setInfo(p);
+                return row;
+            }
+
+            private String labelFor(PackageInfo p) {
+                LabelResolver.Metadata meta = labelResolver.cached(p.pkg(), p.versionCode());
+                if (meta == null) unlabeled.add(p);
+                return meta != null ? meta.label() : p.label();
+            }
+
+            private void publish() {
+                if (pending.isEmpty()) return;
+                List<Row> batch = pending;
+                pending = new ArrayList<>();
+                Platform.runLater(() -> {
+                    for (Row r : batch) rows.put(r.getPkg(), r);
+                    // Show them only while these rows are the device's and it is displayed;
+                    // an incremental reselection keeps the same map, a full rescan replaces it
+                    if (rows == rowsBySerial.get(serial) && serial.equals(displayedSerial)) appsData.addAll(batch);
+                });
+            }
+
+            /**
+             * Real labels for builds not seen before, in one device batch of its own
+             * once the table is shown, so badging neither delays "Loaded" nor holds
+             * the scan's permit.
+             */
+            private void resolveLabels() {
+                if (unlabeled.isEmpty()) return;
+                labelResolver.resolveAsync(serial, unlabeled).whenComplete((labels, ex) -> {
+                    if (ex != null) {
+                        System.err.println("LabelResolver: Label resolution failed on " + serial + ": " + ex.getMessage());
+                        return;
+                    }
+                    if (labels.isEmpty()) return;
+                    Platform.runLater(() -> {
+                        for (Map.Entry<String, LabelResolver.Metadata> e : labels.entrySet()) {
+                            Row r = rows.get(e.getKey());
+                            if (r != null) r.setLabel(e.getValue().label());
+                        }
+                        if (generation == scanGeneration) appsTable.refresh();
+                    });
+                });
+            }
+
+            /** Drops rows streamed by a scan that then failed; a partial list must not pass for the device's. */
+            private void discardStreamedRows() {
+                pending.clear();
+                Platform.runLater(() -> {
+                    if (rows != rowsBySerial.get(serial)) return;
+                    rowsBySerial.remove(serial);
+                    if (serial.equals(displayedSerial)) appsData.clear();
+                });
+            }
+
+            /** Patches the device's rows with a rescan diff; an empty diff costs nothing on the FX thread. */
+            private void applyDiff(ScanDiff diff) {
+                if (diff.isEmpty()) return;
+                List<Row> added = new ArrayList<>();
+                for (PackageInfo p : diff.added()) added.add(createRow(p));
+                Map<PackageInfo, String> relabeled = new HashMap<>();
+                for (PackageInfo p : diff.changed()) relabeled.put(p, labelFor(p));
+                Platform.runLater(() -> {
+                    Set<Row> removed = new HashSet<>();
+                    for (PackageInfo p : diff.removed()) {
+                        Row r = rows.remove(p.pkg());
+                        if (r != null) removed.add(r);
+                    }
+                    for (Map.Entry<PackageInfo, String> e : relabeled.entrySet()) {
+                        Row r = rows.get(e.getKey().pkg());
+                        if (r == null) continue;
+                        r.setInfo(e.getKey());
+                        r.setType(e.getKey().systemApp());
+                        r.setLabel(e.getValue());
+                    }
+                    for (Row r : added) rows.put(r.getPkg(), r);
+                    if (generation != scanGeneration) return;
+                    if (!removed.isEmpty()) appsData.removeAll(removed);
+                    if (!added.isEmpty()) appsData.addAll(added);
+                    if (!relabeled.isEmpty()) appsTable.refresh();
+                });
+            }
             
             @Override
             protected void succeeded() {
-                appsData.clear();
-                if (pkgs == null || pkgs.isEmpty()) {
+                if (stale) {
+                    setStatus("Could not rescan " + info.displayName() + "; showing the previous "
+                            + found + " packages (see terminal output)");
+                    showProgress(false);
+                    return;
+                }
+                if (found == 0) {
                     setStatus("No packages found - check device connection and USB debugging");
                     Alert warn = new Alert(Alert.AlertType.WARNING);
                     warn.setTitle("No Packages Found");
@@ -435,15 +736,10 @@ public class Main extends Application {
                     showProgress(false);
                     return;
                 }
-                for (PackageInfo p : pkgs) {
-                    String[] rec = recommendations.getOrDefault(p.pkg(), new String[]{"", "", ""});
-                    String action = rec[0];
-                    String risk = rec[1];
-                    Row row = new Row(p.pkg(), p.systemApp(), action, risk);
-                    row.setLabel(p.label());
-                    appsData.add(row);
-                }
-                setStatus("Loaded " + pkgs.size() + " packages for " + info.displayName());
+                setStatus("Loaded " + found + " packages for " + info.displayName());
+                resolveLabels();
+                devicesList.refresh(); // now with manufacturer from getprop
+                if (adb.getCache() != null) System.out.println("AdbRunner: Cache " + adb.getCache().stats());
                 showProgress(false);
             }
             
@@ -465,7 +761,7 @@ public class Main extends Application {
         };
         
         task.messageProperty().addListener((obs, oldMsg, newMsg) -> setStatus(newMsg));
-        new Thread(task).start();
+        adb.getScheduler().execute(task);
     }
 
     // Debounced filtering logic using a background thread
@@ -506,6 +802,15 @@ public class Main extends Application {
         appsTable.refresh();
     }
 
+    /** User-0 state a successful operation leaves the package in. */
+    private static int stateAfter(String op) {
+        return switch (op) {
+            case "disable" -> PackageInfo.STATE_INSTALLED | PackageInfo.STATE_DISABLED;
+            case "uninstall" -> PackageInfo.STATE_UNINSTALLED;
+            default -> PackageInfo.STATE_INSTALLED;
+        };
+    }
+
     private void showPackageDetails(Row row) {
         detailsPane.getChildren().clear();
         if (row == null) {
@@ -544,10 +849,20 @@ public class Main extends Application {
         Label actionValue = new Label(row.getAction().isBlank() ? "No recommendation" : row.getAction());
         actionValue.setStyle("-fx-text-fill: #1f2937; -fx-padding: 4px 0 12px 0; -fx-font-weight: 600;");
 
+        // Only present when the scan reported it
+        PackageInfo info = row.getInfo();
+        List<Node> scanDetails = new ArrayList<>();
+        if (info != null) {
+            if (!info.stateLabel().isEmpty()) addDetail(scanDetails, "State (user 0):", info.stateLabel());
+            if (info.versionCode() > 0) addDetail(scanDetails, "Version Code:", String.valueOf(info.versionCode()));
+            if (info.uid() >= 0) addDetail(scanDetails, "UID:", String.valueOf(info.uid()));
+            if (!info.installer().isBlank()) addDetail(scanDetails, "Installer:", info.installer());
+        }
+
         Label reasonLabel = new Label("Reason:");
         reasonLabel.setStyle("-fx-font-weight: 700; -fx-text-fill: #374151; -fx-font-size: 12px;");
-        String[] rec = recommendations.getOrDefault(row.getPkg(), new String[]{"", "", ""});
-        Label reasonValue = new Label(rec[2].isBlank() ? "N/A" : rec[2]);
+        String reason = row.getRecommendation().reason();
+        Label reasonValue = new Label(reason.isBlank() ? "N/A" : reason);
         reasonValue.setWrapText(true);
         reasonValue.setStyle("-fx-text-fill: #4b5563; -fx-padding: 4px 0 12px 0; -fx-line-spacing: 1.5;");
 
@@ -557,9 +872,20 @@ public class Main extends Application {
             pkgLabel, pkgValue,
             typeLabel, typeValue,
             riskLabel, riskValue,
-            actionLabel, actionValue,
-            reasonLabel, reasonValue
+            actionLabel, actionValue
         );
+        detailsPane.getChildren().addAll(scanDetails);
+        detailsPane.getChildren().addAll(reasonLabel, reasonValue);
+    }
+
+    private void addDetail(List<Node> nodes, String name, String value) {
+        Label nameLabel = new Label(name);
+        nameLabel.setStyle("-fx-font-weight: 700; -fx-text-fill: #374151; -fx-font-size: 12px;");
+        Label valueLabel = new Label(value);
+        valueLabel.setWrapText(true);
+        valueLabel.setStyle("-fx-text-fill: #1f2937; -fx-padding: 4px 0 12px 0;");
+        nodes.add(nameLabel);
+        nodes.add(valueLabel);
     }
     
     private Separator createStyledSeparator() {
@@ -605,56 +931,89 @@ public class Main extends Application {
 
         showProgress(true);
         
+        String serial = currentSerial;
+        // Per-package results reach the FX thread in one batch per pulse
+        FxUpdateCoalescer ui = new FxUpdateCoalescer(history, (current, total, text) -> {
+            progressBar.setProgress((double) current / total);
+            statusBar.setText(text);
+        });
         Task<Integer> task = new Task<>() {
             @Override
             protected Integer call() {
-                int ok = 0;
-                int current = 0;
+                ApplyBatchEvent event = new ApplyBatchEvent();
+                event.begin();
+                AtomicInteger ok = new AtomicInteger();
+                AtomicInteger done = new AtomicInteger();
+                int total = selectedRows.size();
+                String actionName = op.toUpperCase();
+                
+                // Commands run concurrently up to the scheduler's per-device limit
+                List<CompletableFuture<Void>> pending = new ArrayList<>();
                 for (Row r : selectedRows) {
-                    current++;
-                    updateMessage(String.format("%s %d/%d: %s", op, current, selectedRows.size(), r.getPkg()));
-                    updateProgress(current, selectedRows.size());
-                    
-                    CommandResult res;
-                    switch (op) {
-                        case "disable" -> res = adb.run("-s", currentSerial, "shell", "pm", "disable-user", "--user", "0", r.getPkg());
-                        case "uninstall" -> res = adb.run("-s", currentSerial, "shell", "pm", "uninstall", "--user", "0", r.getPkg());
-                        case "enable" -> res = adb.run("-s", currentSerial, "shell", "pm", "enable", r.getPkg());
-                        default -> res = new CommandResult(-1, "", "Unknown op");
-                    }
-                    
-                    boolean success = res.isSuccess();
-                    if (success) ok++;
-                    
-                    // Log to history (append-only; table is already bound)
-                    String actionName = op.toUpperCase();
-                    Platform.runLater(() -> history.log(actionName, r.getPkg(), success));
+                    String[] args = switch (op) {
+                        case "disable" -> new String[]{"-s", serial, "shell", "pm", "disable-user", "--user", "0", r.getPkg()};
+                        case "uninstall" -> new String[]{"-s", serial, "shell", "pm", "uninstall", "--user", "0", r.getPkg()};
+                        case "enable" -> new String[]{"-s", serial, "shell", "pm", "enable", r.getPkg()};
+                        default -> null;
+                    };
+                    pending.add(adb.getScheduler().submit(serial, () -> {
+                        // Timed once a permit is held, so queueing behind other commands isn't counted
+                        long start = System.nanoTime();
+                        CommandResult result = args != null ? adb.run(args) : new CommandResult(-1, "", "Unknown op");
+                        long durationMs = (System.nanoTime() - start) / 1_000_000;
+                        int current = done.incrementAndGet();
+                        ui.progress(current, total, String.format("%s %d/%d: %s", op, current, total, r.getPkg()));
+                        
+                        boolean success = result.isSuccess();
+                        if (success) ok.incrementAndGet();
+                        
+                        // Log to history (journaled; table is already bound)
+                        ui.log(new ActionHistory.Entry(System.currentTimeMillis(), serial, actionName, r.getPkg(), result.exitCode(), durationMs));
+                        if (success) ui.update(() -> {
+                            if (r.getInfo() != null) r.setInfo(r.getInfo().withState(stateAfter(op)));
+                        });
+                        return null;
+                    }));
                 }
-                return ok;
+                CompletableFuture.allOf(pending.toArray(new CompletableFuture<?>[0])).join();
+                
+                event.serial = serial;
+                event.operation = op;
+                event.packages = total;
+                event.succeeded = ok.get();
+                event.commit();
+                return ok.get();
             }
         };
         
         task.setOnSucceeded(e -> {
+            ui.stop();
             int ok = task.getValue();
             setStatus("Applied " + op + " to " + ok + "/" + selectedRows.size() + " selected");
             showProgress(false);
-            // Unbind and reset progress bar
-            if (progressBar.progressProperty().isBound()) progressBar.progressProperty().unbind();
             progressBar.setProgress(0);
         });
         
         task.setOnFailed(e -> {
+            ui.stop();
             setStatus("Failed to apply " + op);
             showProgress(false);
-            if (progressBar.progressProperty().isBound()) progressBar.progressProperty().unbind();
             progressBar.setProgress(0);
         });
         
-        task.messageProperty().addListener((obs, oldMsg, newMsg) -> setStatus(newMsg));
+        task.setOnCancelled(e -> {
+            ui.stop();
+            setStatus("Cancelled " + op);
+            showProgress(false);
+            progressBar.setProgress(0);
+        });
+        
+        // Progress is driven by the coalescer, not bound to the task
         if (progressBar.progressProperty().isBound()) progressBar.progressProperty().unbind();
-        progressBar.progressProperty().bind(task.progressProperty());
+        progressBar.setProgress(0);
+        ui.start();
         
-        new Thread(task).start();
+        adb.getScheduler().execute(task);
     }
 
     private void createRestoreScript() {
@@ -662,7 +1021,7 @@ public class Main extends Application {
         try {
             List<PackageInfo> selected = new ArrayList<>();
             for (Row r : filteredData) {
-                if (r.isSelected()) selected.add(new PackageInfo(r.getPkg(), "", "", r.getRisk(), "", r.getType().equals("System")));
+                if (r.isSelected()) selected.add(new PackageInfo(r.getPkg(), "", r.getRecommendation(), r.getType().equals("System")));
             }
             if (selected.isEmpty()) {
                 setStatus("No packages selected");
@@ -683,11 +1042,17 @@ public class Main extends Application {
     private void showSettings() {
         SettingsDialog dialog = new SettingsDialog(config);
         dialog.show();
-        // Reload ADB runner if path changed
-        String newPath = config.get("adbPath");
-        adb = new AdbRunner(newPath.isBlank() ? "adb" : newPath);
+        // Reload ADB runner if path or session mode changed
+        deviceManager.stopWatching();
+        adb.close();
+        adb = createAdbRunner();
         deviceManager = new DeviceManager(adb);
-        packageScanner = new PackageScanner(adb);
+        packageScanner = createPackageScanner();
+        labelResolver = new LabelResolver(adb, config.getConfigDir().resolve(LabelResolver.CACHE_FILE));
+        // The new scanner has no snapshots to diff against
+        rowsBySerial.clear();
+        displayedSerial = null;
+        deviceManager.startWatching(event -> Platform.runLater(() -> onDeviceEvent(event)));
         setStatus("Settings saved. Restart may be required for some changes.");
     }
     
@@ -700,37 +1065,80 @@ public class Main extends Application {
         FileChooser chooser = new FileChooser();
         chooser.setTitle("Export Package List");
         chooser.setInitialFileName("packages.csv");
-        chooser.getExtensionFilters().addAll(
-            new FileChooser.ExtensionFilter("CSV Files", "*.csv"),
-            new FileChooser.ExtensionFilter("Text Files", "*.txt")
-        );
+        chooser.getExtensionFilters().addAll(EXPORT_FILTERS);
         
     java.io.File outFile = chooser.showSaveDialog(appsTable.getScene().getWindow());
     if (outFile == null) return;
     Path file = outFile.toPath();
         
-        try {
-            StringBuilder sb = new StringBuilder();
-            sb.append("Package,Label,Type,Risk,Recommended Action\n");
-            
-            for (Row r : filteredData) {
-                sb.append(String.format("\"%s\",\"%s\",\"%s\",\"%s\",\"%s\"\n",
-                    r.getPkg(),
-                    r.getLabel(),
-                    r.getType(),
-                    r.getRisk(),
-                    r.getAction()));
+        // The rows are read off the FX thread; copy the list so filtering doesn't change it mid-export
+        runExport("packages", file, "ADB Debloater - Package List", PACKAGE_COLUMNS, List.copyOf(filteredData));
+    }
+
+    /** Streams rows to a file on a background task, with progress in the status bar. */
+    private <T> void runExport(String what, Path file, String title, List<TableExporter.Column<T>> columns, List<? extends T> rows) {
+        showProgress(true);
+        Task<Long> task = new Task<>() {
+            @Override
+            protected Long call() throws IOException {
+                return TableExporter.export(file, title, columns, rows, (done, total) -> {
+                    updateProgress(done, total);
+                    updateMessage("Exporting " + what + " " + done + "/" + total);
+                });
             }
-            
-            Files.writeString(file, sb.toString());
-            setStatus("Exported " + filteredData.size() + " packages to " + file.getFileName());
-        } catch (IOException ex) {
-            setStatus("Failed to export: " + ex.getMessage());
-        }
+        };
+        task.setOnSucceeded(e -> {
+            setStatus("Exported " + task.getValue() + " " + what + " to " + file.getFileName());
+            showProgress(false);
+            if (progressBar.progressProperty().isBound()) progressBar.progressProperty().unbind();
+            progressBar.setProgress(0);
+        });
+        task.setOnFailed(e -> {
+            setStatus("Failed to export " + what + ": " + task.getException().getMessage());
+            showProgress(false);
+            if (progressBar.progressProperty().isBound()) progressBar.progressProperty().unbind();
+            progressBar.setProgress(0);
+        });
+        task.messageProperty().addListener((obs, oldMsg, newMsg) -> setStatus(newMsg));
+        if (progressBar.progressProperty().isBound()) progressBar.progressProperty().unbind();
+        progressBar.progressProperty().bind(task.progressProperty());
+        adb.getScheduler().execute(task);
     }
     
+    /** Shows saved history entries matching the filter bar, or the live log when the filter is empty. */
+    private void filterHistory(String pkg, String serial, String range) {
+        long window = HISTORY_RANGES.getOrDefault(range, 0L);
+        HistoryQuery query = new HistoryQuery(pkg, serial, window > 0 ? System.currentTimeMillis() - window : Long.MIN_VALUE, Long.MAX_VALUE);
+        if (query.isAny()) {
+            historyTable.setItems(history.getObservableEntries());
+            return;
+        }
+        long start = System.nanoTime();
+        List<ActionHistory.Entry> matches = history.query(query);
+        historyResults = matches;
+        historyTable.setItems(FXCollections.observableList(matches));
+        setStatus(String.format("History: %d matching entries (%.1f ms)", matches.size(), (System.nanoTime() - start) / 1e6));
+    }
+
+    private void deleteSavedHistory() {
+        Alert confirm = new Alert(Alert.AlertType.CONFIRMATION,
+                "This permanently deletes the saved record of every action taken on every device.\n\nThis cannot be undone.",
+                ButtonType.YES, ButtonType.NO);
+        confirm.setTitle("Delete Saved History");
+        confirm.setHeaderText("Delete all saved history?");
+        if (confirm.showAndWait().orElse(ButtonType.NO) != ButtonType.YES) return;
+        history.deleteSaved();
+        historyResults = List.of();
+        historyTable.setItems(history.getObservableEntries());
+        setStatus("Saved history deleted");
+    }
+
     private void exportHistory() {
-        if (history.getEntries().isEmpty()) {
+        // A filtered table exports the matches; otherwise all saved history, not just the loaded entries
+        List<ActionHistory.Entry> entries = historyTable.getItems() == history.getObservableEntries()
+                ? history.query(HistoryQuery.ANY)
+                : historyResults;
+        if (entries.isEmpty()) {
             setStatus("No history to export");
             return;
         }
@@ -738,18 +1146,14 @@ public class Main extends Application {
         FileChooser chooser = new FileChooser();
         chooser.setTitle("Export Action History");
         chooser.setInitialFileName("history.txt");
-        chooser.getExtensionFilters().add(new FileChooser.ExtensionFilter("Text Files", "*.txt"));
+        chooser.getExtensionFilters().addAll(EXPORT_FILTERS);
+        chooser.setSelectedExtensionFilter(EXPORT_FILTERS.get(2));
         
     java.io.File outFile = chooser.showSaveDialog(historyTable.getScene().getWindow());
     if (outFile == null) return;
     Path file = outFile.toPath();
         
-        try {
-            Files.writeString(file, history.exportToText());
-            setStatus("Exported history to " + file.getFileName());
-        } catch (IOException ex) {
-            setStatus("Failed to export history: " + ex.getMessage());
-        }
+        runExport("history entries", file, "ADB Debloater - Action History", ActionHistory.exportColumns(), entries);
     }
     
     private void showHelp() {
@@ -782,19 +1186,21 @@ public class Main extends Application {
     public static void main(String[] args) { launch(args); }
 
     // Row model for TableView with properties
-    public static class Row {
+    public static final class Row {
         private final javafx.beans.property.BooleanProperty selected = new javafx.beans.property.SimpleBooleanProperty(false);
         private final javafx.beans.property.StringProperty pkg = new javafx.beans.property.SimpleStringProperty("");
         private final javafx.beans.property.StringProperty label = new javafx.beans.property.SimpleStringProperty("");
         private final javafx.beans.property.StringProperty type = new javafx.beans.property.SimpleStringProperty("");
         private final javafx.beans.property.StringProperty action = new javafx.beans.property.SimpleStringProperty("");
         private final javafx.beans.property.StringProperty risk = new javafx.beans.property.SimpleStringProperty("");
+        private final javafx.beans.property.StringProperty state = new javafx.beans.property.SimpleStringProperty("");
+        private PackageInfo info;
+        private Recommendation recommendation = Recommendation.EMPTY;
 
-        public Row(String pkg, boolean system, String recommended, String risk) {
+        public Row(String pkg, boolean system, Recommendation recommendation) {
             this.pkg.set(pkg);
             this.type.set(system ? "System" : "User");
-            this.action.set(recommended == null ? "" : recommended);
-            this.risk.set(risk == null ? "" : risk);
+            setRecommendation(recommendation);
         }
 
         public boolean isSelected() { return selected.get(); }
@@ -809,12 +1215,31 @@ public class Main extends Application {
         public javafx.beans.property.StringProperty labelProperty() { return label; }
 
         public String getType() { return type.get(); }
+        public void setType(boolean system) { type.set(system ? "System" : "User"); }
         public javafx.beans.property.StringProperty typeProperty() { return type; }
 
         public String getAction() { return action.get(); }
         public javafx.beans.property.StringProperty actionProperty() { return action; }
 
         public String getRisk() { return risk.get(); }
+        public Recommendation getRecommendation() { return recommendation; }
+        public void setRecommendation(Recommendation rec) {
+            // Pack entries are shared instances, so an unchanged row is a reference check
+            if (rec == null) rec = Recommendation.EMPTY;
+            if (rec == recommendation) return;
+            recommendation = rec;
+            action.set(rec.action().label());
+            risk.set(rec.risk().label());
+        }
         public javafx.beans.property.StringProperty riskProperty() { return risk; }
+
+        public String getState() { return state.get(); }
+        public javafx.beans.property.StringProperty stateProperty() { return state; }
+
+        public PackageInfo getInfo() { return info; }
+        public void setInfo(PackageInfo v) {
+            info = v;
+            state.set(v == null ? "" : v.stateLabel());
+        }
     }
 }
\ No newline at end of file
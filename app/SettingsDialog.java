@@ -68,9 +68,27 @@ public class SettingsDialog {
         CheckBox autoUpdateCheck = new CheckBox("Auto-update platform-tools");
         autoUpdateCheck.setSelected(config.getBoolean("autoUpdatePlatformTools"));
 
+        Label transportLabel = new Label("ADB Transport:");
+        ComboBox<String> transportCombo = new ComboBox<>();
+        transportCombo.getItems().addAll("cli", "socket");
+        transportCombo.setValue(config.get("adbTransport"));
+        transportCombo.setTooltip(new Tooltip("socket talks to the adb server on port 5037 directly"));
+
+        CheckBox sessionCheck = new CheckBox("Reuse one ADB shell per device (faster batch actions)");
+        sessionCheck.setSelected(config.getBoolean("adbShellSession"));
+
+        CheckBox jfrCheck = new CheckBox("Record JFR diagnostics to the config folder (applies on restart)");
+        jfrCheck.setSelected(config.getBoolean("jfrRecording"));
+
         CheckBox telemetryCheck = new CheckBox("Send anonymous telemetry (opt-in)");
         telemetryCheck.setSelected(config.getBoolean("telemetryOptIn"));
 
+        Label scanModeLabel = new Label("Package Scan Mode:");
+        ComboBox<String> scanModeCombo = new ComboBox<>();
+        scanModeCombo.getItems().addAll("list", "dumpsys");
+        scanModeCombo.setValue(config.get("packageScanMode"));
+        scanModeCombo.setTooltip(new Tooltip("dumpsys also reads enabled state, version, UID and installer in one pass"));
+
         Label oemSourceLabel = new Label("OEM Pack Source:");
         ComboBox<String> oemSourceCombo = new ComboBox<>();
         oemSourceCombo.getItems().addAll("local", "remote");
@@ -89,7 +107,11 @@ public class SettingsDialog {
                 config.set("adbPath", adbPathField.getText().trim());
             }
             config.setBoolean("autoUpdatePlatformTools", autoUpdateCheck.isSelected());
+            config.set("adbTransport", transportCombo.getValue());
+            config.setBoolean("adbShellSession", sessionCheck.isSelected());
+            config.setBoolean("jfrRecording", jfrCheck.isSelected());
             config.setBoolean("telemetryOptIn", telemetryCheck.isSelected());
+            config.set("packageScanMode", scanModeCombo.getValue());
             config.set("oemPackSource", oemSourceCombo.getValue());
             try {
                 config.save();
@@ -110,13 +132,19 @@ public class SettingsDialog {
         grid.add(adbPathField, 1, 1);
         grid.add(browseBtn, 2, 1);
         grid.add(autoUpdateCheck, 0, 2, 3, 1);
-        grid.add(telemetryCheck, 0, 3, 3, 1);
-        grid.add(oemSourceLabel, 0, 4);
-        grid.add(oemSourceCombo, 1, 4, 2, 1);
-        grid.add(saveBtn, 1, 5);
-        grid.add(cancelBtn, 2, 5);
-
-        Scene scene = new Scene(grid, 600, 300);
+        grid.add(transportLabel, 0, 3);
+        grid.add(transportCombo, 1, 3, 2, 1);
+        grid.add(sessionCheck, 0, 4, 3, 1);
+        grid.add(jfrCheck, 0, 5, 3, 1);
+        grid.add(telemetryCheck, 0, 6, 3, 1);
+        grid.add(scanModeLabel, 0, 7);
+        grid.add(scanModeCombo, 1, 7, 2, 1);
+        grid.add(oemSourceLabel, 0, 8);
+        grid.add(oemSourceCombo, 1, 8, 2, 1);
+        grid.add(saveBtn, 1, 9);
+        grid.add(cancelBtn, 2, 9);
+
+        Scene scene = new Scene(grid, 600, 440);
         stage.setScene(scene);
     }
 
@@ -0,0 +1,84 @@
+package core;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * History queries: HistoryIndex lookups against a linear scan over the same
+ * entries, on a synthetic fleet history. Run with `./gradlew jmh`.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class HistoryIndexBenchmark {
+    private static final long T0 = 1_700_000_000_000L;
+
+    @Param({"1000000"})
+    public int entries;
+
+    private HistoryIndex index;
+    private List<ActionHistory.Entry> list;
+    private HistoryQuery pkgOnDevice;
+    private HistoryQuery lastHour;
+
+    @Setup
+    public void setup() {
+        index = new HistoryIndex();
+        list = new ArrayList<>(entries);
+        // 50 devices, 2000 packages, one action every 2 seconds
+        for (int i = 0; i < entries; i++) {
+            ActionHistory.Entry e = new ActionHistory.Entry(T0 + i * 2000L, "SERIAL" + (i % 50),
+                    i % 3 == 0 ? "UNINSTALL" : "DISABLE", "com.vendor.app" + (i % 2000), i % 17 == 0 ? 1 : 0, 40);
+            index.add(e);
+            list.add(e);
+        }
+        pkgOnDevice = new HistoryQuery("com.vendor.app1234", "SERIAL34", Long.MIN_VALUE, Long.MAX_VALUE);
+        long end = T0 + entries * 2000L;
+        lastHour = new HistoryQuery(null, null, end - 3_600_000L, end);
+    }
+
+    @Benchmark
+    public int indexedPackageOnDevice() {
+        return index.query(pkgOnDevice).size();
+    }
+
+    @Benchmark
+    public int scanPackageOnDevice() {
+        return scan(pkgOnDevice);
+    }
+
+    @Benchmark
+    public int indexedTimeRange() {
+        return index.query(lastHour).size();
+    }
+
+    @Benchmark
+    public int scanTimeRange() {
+        return scan(lastHour);
+    }
+
+    private int scan(HistoryQuery q) {
+        int n = 0;
+        for (ActionHistory.Entry e : list) {
+            if ((q.pkg() == null || q.pkg().equals(e.getDetails())) && (q.serial() == null || q.serial().equals(e.getSerial()))
+                    && e.getTimeMillis() >= q.fromMillis() && e.getTimeMillis() < q.toMillis()) n++;
+        }
+        return n;
+    }
+}
@@ -0,0 +1,99 @@
+package core;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * OEM pack parsing: the streaming OemPackReader against the regex extraction
+ * SimpleOemPackLoader used before, on a synthetic pack. Run with `./gradlew jmh`.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class OemPackReaderBenchmark {
+    @Param({"100000"})
+    public int entries;
+
+    private String json;
+
+    @Setup
+    public void setup() {
+        String[] actions = {"disable", "uninstall", "keep"};
+        String[] risks = {"low", "medium", "high"};
+        StringBuilder sb = new StringBuilder("{\n  \"oem\": \"Synthetic\",\n  \"version\": \"2025-11-13\",\n  \"packages\": [\n");
+        for (int i = 0; i < entries; i++) {
+            if (i > 0) sb.append(",\n");
+            sb.append("    {\n")
+                    .append("      \"pkg\": \"com.vendor.module").append(i % 97).append(".app").append(i).append("\",\n")
+                    .append("      \"label\": \"Vendor App ").append(i).append("\",\n")
+                    .append("      \"recommendedAction\": \"").append(actions[i % 3]).append("\",\n")
+                    .append("      \"risk\": \"").append(risks[i % 3]).append("\",\n")
+                    .append("      \"reason\": \"Preinstalled vendor service ").append(i % 50).append(", safe to remove on most builds\"\n")
+                    .append("    }");
+        }
+        json = sb.append("\n  ]\n}\n").toString();
+    }
+
+    @Benchmark
+    public Map<String, Recommendation> streamingReader() throws IOException {
+        return OemPackReader.read(new StringReader(json));
+    }
+
+    @Benchmark
+    public Map<String, String[]> legacyRegex() {
+        return legacyExtract(json);
+    }
+
+    // The extraction SimpleOemPackLoader used before OemPackReader, kept as the baseline
+    private static final Pattern ITEM_PATTERN = Pattern.compile("\\{[^}]*\\}", Pattern.DOTALL);
+    private static final Pattern PKG_PATTERN = Pattern.compile("\\\"pkg\\\"\\s*:\\s*\\\"([^\\\"]+)\\\"");
+    private static final Pattern ACTION_PATTERN = Pattern.compile("\\\"recommendedAction\\\"\\s*:\\s*\\\"([^\\\"]*)\\\"");
+    private static final Pattern RISK_PATTERN = Pattern.compile("\\\"risk\\\"\\s*:\\s*\\\"([^\\\"]*)\\\"");
+    private static final Pattern REASON_PATTERN = Pattern.compile("\\\"reason\\\"\\s*:\\s*\\\"([^\\\"]*)\\\"");
+
+    static Map<String, String[]> legacyExtract(String json) {
+        Map<String, String[]> map = new HashMap<>();
+        int arrIdx = json.indexOf("\"packages\"");
+        if (arrIdx < 0) return map;
+        int bracket = json.indexOf('[', arrIdx);
+        if (bracket < 0) return map;
+        int depth = 0; int end = -1;
+        for (int i = bracket; i < json.length(); i++) {
+            char c = json.charAt(i);
+            if (c == '[') depth++;
+            else if (c == ']') { depth--; if (depth == 0) { end = i; break; } }
+        }
+        if (end < 0) return map;
+        Matcher m = ITEM_PATTERN.matcher(json.substring(bracket + 1, end));
+        while (m.find()) {
+            String obj = m.group();
+            String pkg = group(PKG_PATTERN, obj);
+            if (pkg == null || pkg.isBlank()) continue;
+            map.put(pkg, new String[]{def(group(ACTION_PATTERN, obj)), def(group(RISK_PATTERN, obj)), def(group(REASON_PATTERN, obj))});
+        }
+        return map;
+    }
+
+    private static String group(Pattern p, String s) { Matcher m = p.matcher(s); return m.find() ? m.group(1) : null; }
+    private static String def(String s) { return s == null ? "" : s; }
+}
@@ -0,0 +1,93 @@
+package core;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * `pm list packages -f` parsing: the single-pass PmListParser against the
+ * split/trim/substring parser it replaced. Run with `./gradlew jmh`.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PmListParserBenchmark {
+    @Param({"500", "5000", "50000"})
+    public int lines;
+
+    private String output;
+
+    @Setup
+    public void setup() {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < lines; i++) {
+            switch (i % 4) {
+                case 0 -> sb.append("package:/system/app/Vendor").append(i).append("/Vendor").append(i)
+                        .append(".apk=com.vendor.app").append(i);
+                case 1 -> sb.append("package:/product/priv-app/Oem").append(i).append("/Oem").append(i)
+                        .append(".apk=com.oem.service.module").append(i);
+                case 2 -> sb.append("package:/data/app/~~Zx9aQ").append(i).append("==/com.example.app").append(i)
+                        .append("-Kq3b==/base.apk=com.example.app").append(i);
+                default -> sb.append("package:/system_ext/priv-app/Ext").append(i).append("/Ext").append(i)
+                        .append(".apk=com.android.ext").append(i);
+            }
+            sb.append(" versionCode:").append(340000 + i).append('\n');
+        }
+        output = sb.toString();
+    }
+
+    @Benchmark
+    public void charParser(Blackhole bh) {
+        PmListParser.parseAll(output, bh::consume);
+    }
+
+    @Benchmark
+    public void charParserPerLine(Blackhole bh) {
+        // As used by the streaming scan, which hands over one String per line
+        output.lines().forEach(l -> bh.consume(PmListParser.parse(l)));
+    }
+
+    @Benchmark
+    public void legacySplitParser(Blackhole bh) {
+        for (String line : output.split("\n")) {
+            PackageInfo p = legacyParse(line);
+            if (p != null) bh.consume(p);
+        }
+    }
+
+    // The parser PackageScanner used before PmListParser, kept as the baseline
+    private static PackageInfo legacyParse(String line) {
+        line = line.trim();
+        if (!line.startsWith("package:")) return null;
+        int eq = line.lastIndexOf('=');
+        if (eq <= 8 || eq + 1 >= line.length()) return null;
+        String left = line.substring(8, eq);
+        String pkg = line.substring(eq + 1).trim();
+        long versionCode = 0;
+        int space = pkg.indexOf(' ');
+        if (space > 0) {
+            int vc = pkg.indexOf("versionCode:", space);
+            if (vc > 0) versionCode = Long.parseLong(pkg.substring(vc + 12).trim());
+            pkg = pkg.substring(0, space);
+        }
+        boolean system = left.contains("/system/") || left.contains("/product/") || left.contains("/system_ext/");
+        String[] parts = pkg.split("\\.");
+        String last = parts[parts.length - 1];
+        String label = last.substring(0, 1).toUpperCase() + last.substring(1);
+        return PackageInfo.of(pkg).withSystem(system).withLabel(label).withDetails(versionCode, -1, "", 0);
+    }
+}
@@ -1,6 +1,7 @@
 plugins {
     id("application")
     id("org.openjfx.javafxplugin") version "0.0.14"
+    id("me.champeau.jmh") version "0.7.2"
 }
 
 group = "com.uadb"
@@ -41,6 +42,16 @@ sourceSets {
     named("test") {
         java.srcDirs("test")
     }
+    named("jmh") {
+        java.srcDirs("benchmarks")
+    }
+}
+
+// Microbenchmarks for scan/parse hot paths: ./gradlew jmh
+jmh {
+    jmhVersion.set("1.37")
+    resultFormat.set("JSON")
+    resultsFile.set(layout.buildDirectory.file("reports/jmh/results.json"))
 }
 
 tasks.withType<Test> {
@@ -84,7 +95,7 @@ tasks.register<Exec>("jpackage") {
         "--main-jar", tasks.jar.get().archiveFileName.get(),
         "--main-class", mainClass,
         "--module-path", modulePath,
-        "--add-modules", "javafx.controls",
+        "--add-modules", "javafx.controls,jdk.jfr",
         "--java-options", "-Xmx512m"
     )
     
@@ -1,34 +1,68 @@
 package core;
 
-import javafx.collections.FXCollections;
 import javafx.collections.ObservableList;
+import javafx.collections.ObservableListBase;
 
+import java.time.Instant;
+import java.time.LocalDate;
 import java.time.LocalDateTime;
+import java.time.ZoneId;
 import java.time.format.DateTimeFormatter;
-import java.util.ArrayList;
+import java.util.Collection;
 import java.util.List;
+import java.util.Objects;
 
 /**
- * Tracks all ADB actions performed during the session.
+ * Tracks all ADB actions performed on devices. Entries are kept in a bounded
+ * columnar ring buffer (the newest {@code capacity} entries) and exposed as a
+ * read-only observable list that builds Entry objects only for the rows being
+ * read, so memory stays flat however long the session runs. With a
+ * {@link HistoryJournal} attached, earlier sessions are replayed and every new
+ * entry is persisted; {@link #query} searches all of it through a HistoryIndex.
  */
 public class ActionHistory {
+    public static final int DEFAULT_CAPACITY = 100_000;
     private static final DateTimeFormatter TIME_FORMAT = DateTimeFormatter.ofPattern("HH:mm:ss");
+    private static final DateTimeFormatter DATE_TIME_FORMAT = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
     
     public static class Entry {
-        private final LocalDateTime timestamp;
+        private final long timeMillis;
+        private final String serial;
         private final String action;
         private final String details;
-        private final boolean success;
+        private final int exitCode;
+        private final long durationMs;
         
         public Entry(String action, String details, boolean success) {
-            this.timestamp = LocalDateTime.now();
-            this.action = action;
-            this.details = details;
-            this.success = success;
+            this(System.currentTimeMillis(), "", action, details, success ? 0 : 1, 0);
+        }
+
+        public Entry(long timeMillis, String serial, String action, String details, int exitCode, long durationMs) {
+            this.timeMillis = timeMillis;
+            this.serial = serial == null ? "" : serial;
+            this.action = action == null ? "" : action;
+            this.details = details == null ? "" : details;
+            this.exitCode = exitCode;
+            this.durationMs = durationMs;
         }
         
+        /** Time of day, with the date for entries replayed from earlier days. */
         public String getTime() {
-            return timestamp.format(TIME_FORMAT);
+            LocalDateTime timestamp = getTimestamp();
+            return timestamp.format(timestamp.toLocalDate().equals(LocalDate.now()) ? TIME_FORMAT : DATE_TIME_FORMAT);
+        }
+
+        public LocalDateTime getTimestamp() {
+            return LocalDateTime.ofInstant(Instant.ofEpochMilli(timeMillis), ZoneId.systemDefault());
+        }
+
+        /** Epoch milliseconds. */
+        public long getTimeMillis() {
+            return timeMillis;
+        }
+
+        public String getSerial() {
+            return serial;
         }
         
         public String getAction() {
@@ -39,46 +73,191 @@ public class ActionHistory {
             return details;
         }
         
+        public int getExitCode() {
+            return exitCode;
+        }
+
+        public long getDurationMs() {
+            return durationMs;
+        }
+
         public boolean isSuccess() {
-            return success;
+            return exitCode == 0;
         }
         
         public String getStatus() {
-            return success ? "✓" : "✗";
+            return isSuccess() ? "✓" : "✗";
+        }
+
+        // Value equality: the history view builds a new Entry each time a row is read
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof Entry e && timeMillis == e.timeMillis && exitCode == e.exitCode && durationMs == e.durationMs
+                    && serial.equals(e.serial) && action.equals(e.action) && details.equals(e.details);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(timeMillis, serial, action, details, exitCode);
         }
     }
-    
-    private final ObservableList<Entry> entries = FXCollections.observableArrayList();
+
+    /** Read-only list over the ring; each append or batch fires a single add (and remove, once full). */
+    private final class EntryView extends ObservableListBase<Entry> {
+        @Override
+        public Entry get(int index) {
+            return ring.get(index);
+        }
+
+        @Override
+        public int size() {
+            return ring.size();
+        }
+
+        void added(List<Entry> evicted, int count) {
+            beginChange();
+            if (!evicted.isEmpty()) nextRemove(0, evicted);
+            nextAdd(ring.size() - count, ring.size());
+            endChange();
+        }
+
+        void replaced(List<Entry> removed) {
+            beginChange();
+            if (!removed.isEmpty()) nextRemove(0, removed);
+            if (ring.size() > 0) nextAdd(0, ring.size());
+            endChange();
+        }
+    }
+
+    private final HistoryRing ring;
+    private final HistoryIndex index = new HistoryIndex();
+    private final EntryView entries = new EntryView();
+    private HistoryJournal journal;
+    // Journal entries pruned so far that the index has already dropped
+    private long prunedSeen;
+
+    public ActionHistory() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    /** Keeps at most {@code capacity} entries in memory; older ones stay in the journal. */
+    public ActionHistory(int capacity) {
+        this.ring = new HistoryRing(capacity);
+    }
+
+    /** Replays the journal's newest entries and persists every entry logged from now on. */
+    public void attachJournal(HistoryJournal journal) {
+        this.journal = journal;
+        List<Entry> removed = List.copyOf(entries);
+        ring.clear();
+        index.clear();
+        journal.replay(e -> {
+            ring.add(e);
+            index.add(e);
+        });
+        prunedSeen = journal.prunedEntries();
+        entries.replaced(removed);
+    }
     
     public void log(String action, String details, boolean success) {
-        entries.add(new Entry(action, details, success));
+        add(new Entry(action, details, success));
+    }
+
+    /** Logs a device command with its outcome; {@code details} is usually the package. */
+    public void log(String serial, String action, String details, int exitCode, long durationMs) {
+        add(new Entry(System.currentTimeMillis(), serial, action, details, exitCode, durationMs));
+    }
+
+    private void add(Entry e) {
+        addAll(List.of(e));
     }
 
+    /** Logs entries built elsewhere (e.g. on worker threads) as one change to the observable view. */
+    public void addAll(Collection<Entry> batch) {
+        if (batch.isEmpty()) return;
+        int oldSize = ring.size();
+        int evict = Math.min(oldSize, Math.max(0, oldSize + batch.size() - ring.capacity()));
+        List<Entry> evicted = evict == 0 ? List.of() : List.copyOf(entries.subList(0, evict));
+        for (Entry e : batch) {
+            if (journal != null) journal.append(e);
+            ring.add(e);
+            index.add(e);
+        }
+        trimIndex();
+        entries.added(evicted, ring.size() - (oldSize - evict));
+    }
+
+    /** Keeps the index to what the journal still holds, or without one, to what the view holds. */
+    private void trimIndex() {
+        if (journal == null) {
+            index.dropOldest(index.size() - ring.capacity());
+            return;
+        }
+        // Index rows are in journal order, so pruned segments are its oldest rows
+        long pruned = journal.prunedEntries();
+        if (pruned > prunedSeen) index.dropOldest((int) Math.min(Integer.MAX_VALUE, pruned - prunedSeen));
+        prunedSeen = pruned;
+    }
+
+    /** Read-only view of the entries, oldest first (not a copy). */
     public List<Entry> getEntries() {
-        return new ArrayList<>(entries);
+        return entries;
     }
 
+    /** Read-only observable view for the history table; rows are built as they are read. */
     public ObservableList<Entry> getObservableEntries() {
         return entries;
     }
 
+    public int size() {
+        return ring.size();
+    }
+
+    /**
+     * Entries matching {@code q} across all persisted history, not just the
+     * entries in memory (without a journal, just those), oldest first. The result is a snapshot that builds
+     * entries as it is read; it is unaffected by later logging or clearing and
+     * may be read from any thread (e.g. by an export task).
+     */
+    public List<Entry> query(HistoryQuery q) {
+        trimIndex();
+        return index.query(q);
+    }
+
+    public int capacity() {
+        return ring.capacity();
+    }
+
+    /** Empties the in-memory view; saved history stays on disk and searchable. */
     public void clear() {
-        entries.clear();
+        List<Entry> removed = List.copyOf(entries);
+        ring.clear();
+        entries.replaced(removed);
     }
 
-    public String exportToText() {
-        StringBuilder sb = new StringBuilder();
-        sb.append("ADB Debloater - Action History\n");
-        sb.append("=".repeat(80)).append("\n\n");
-        
-        for (Entry e : entries) {
-            sb.append(String.format("[%s] %s %s - %s\n", 
-                e.getTime(), 
-                e.getStatus(),
-                e.getAction(), 
-                e.getDetails()));
+    /**
+     * Empties the view and permanently deletes all saved history, including the
+     * journal on disk. Blocks until the journal's segments are gone.
+     */
+    public void deleteSaved() {
+        clear();
+        index.clear();
+        if (journal != null) {
+            journal.clear();
+            journal.flush().join();
+            prunedSeen = journal.prunedEntries();
         }
-        
-        return sb.toString();
+    }
+
+    /** Columns for exporting entries with {@link TableExporter}. */
+    public static List<TableExporter.Column<Entry>> exportColumns() {
+        return List.of(
+                new TableExporter.Column<>("time", "Time", e -> e.getTimestamp().format(DATE_TIME_FORMAT)),
+                new TableExporter.Column<>("serial", "Device", Entry::getSerial),
+                new TableExporter.Column<>("status", "Status", Entry::getStatus),
+                new TableExporter.Column<>("action", "Action", Entry::getAction),
+                new TableExporter.Column<>("details", "Details", Entry::getDetails),
+                new TableExporter.Column<>("exitCode", "Exit Code", e -> String.valueOf(e.getExitCode())),
+                new TableExporter.Column<>("durationMs", "Duration (ms)", e -> String.valueOf(e.getDurationMs())));
     }
 }
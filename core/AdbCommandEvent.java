@@ -0,0 +1,35 @@
+package core;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * JFR event for one adb command, committed by {@link AdbRunner#stream}.
+ */
+@Name("uadb.AdbCommand")
+@Label("ADB Command")
+@Category({"Universal ADB Debloater", "ADB"})
+@Description("One adb invocation, including cache hits")
+public class AdbCommandEvent extends Event {
+    @Label("Serial")
+    public String serial;
+
+    @Label("Command")
+    public String command;
+
+    @Label("Transport")
+    @Description("spawn, session, socket or cache")
+    public String transport;
+
+    @Label("Exit Code")
+    public int exitCode;
+
+    @Label("Output Lines")
+    public int outputLines;
+
+    @Label("Output Characters")
+    public long outputChars;
+}
@@ -0,0 +1,85 @@
+package core;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Wire helpers for the adb server's smart-socket protocol.
+ * Requests are a 4-digit hex length followed by the payload; the server answers
+ * "OKAY" or "FAIL" + hex-length message.
+ */
+public final class AdbProtocol {
+    public static final int DEFAULT_PORT = 5037;
+
+    // shell,v2 packet ids
+    public static final int SHELL_STDOUT = 1;
+    public static final int SHELL_STDERR = 2;
+    public static final int SHELL_EXIT = 3;
+
+    private AdbProtocol() {}
+
+    /** Address of the local adb server, honouring ANDROID_ADB_SERVER_PORT like the CLI does. */
+    public static InetSocketAddress defaultServerAddress() {
+        int port = DEFAULT_PORT;
+        String env = System.getenv("ANDROID_ADB_SERVER_PORT");
+        if (env != null && !env.isBlank()) {
+            try { port = Integer.parseInt(env.trim()); } catch (NumberFormatException ignored) {}
+        }
+        return new InetSocketAddress("127.0.0.1", port);
+    }
+
+    public static SocketChannel connect(InetSocketAddress server) throws IOException {
+        SocketChannel ch = SocketChannel.open();
+        try {
+            ch.configureBlocking(true);
+            ch.connect(server);
+            return ch;
+        } catch (IOException e) {
+            ch.close();
+            throw e;
+        }
+    }
+
+    /** Sends one request and fails with the server's message unless it answers OKAY. */
+    public static void request(SocketChannel ch, String payload) throws IOException {
+        byte[] body = payload.getBytes(StandardCharsets.UTF_8);
+        ByteBuffer buf = ByteBuffer.allocate(4 + body.length);
+        buf.put(String.format("%04x", body.length).getBytes(StandardCharsets.US_ASCII));
+        buf.put(body);
+        buf.flip();
+        while (buf.hasRemaining()) ch.write(buf);
+        readStatus(ch, payload);
+    }
+
+    private static void readStatus(SocketChannel ch, String request) throws IOException {
+        String status = new String(readFully(ch, 4).array(), StandardCharsets.US_ASCII);
+        if ("OKAY".equals(status)) return;
+        if ("FAIL".equals(status)) throw new IOException("adb server refused '" + request + "': " + readHexString(ch));
+        throw new IOException("Unexpected adb server reply '" + status + "' to '" + request + "'");
+    }
+
+    /** Reads a 4-digit hex length followed by that many bytes of UTF-8. */
+    public static String readHexString(SocketChannel ch) throws IOException {
+        int len = Integer.parseInt(new String(readFully(ch, 4).array(), StandardCharsets.US_ASCII), 16);
+        return new String(readFully(ch, len).array(), StandardCharsets.UTF_8);
+    }
+
+    /** Reads a shell,v2 packet header: id byte followed by a little-endian length. */
+    public static ByteBuffer readShellHeader(SocketChannel ch) throws IOException {
+        return readFully(ch, 5).order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    public static ByteBuffer readFully(SocketChannel ch, int n) throws IOException {
+        ByteBuffer buf = ByteBuffer.allocate(n);
+        while (buf.hasRemaining()) {
+            if (ch.read(buf) < 0) throw new EOFException("adb server closed the connection");
+        }
+        buf.flip();
+        return buf;
+    }
+}
@@ -0,0 +1,163 @@
+package core;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.regex.Pattern;
+
+/**
+ * TTL + LRU cache for the output of read-only device queries (getprop, pm list,
+ * dumpsys), keyed by serial and argv. Any mutating pm command on a device drops
+ * that device's entries.
+ */
+public class AdbResultCache {
+    public static final long DEFAULT_TTL_MS = 30_000;
+    public static final int DEFAULT_MAX_ENTRIES = 256;
+    // Larger outputs (e.g. full dumpsys) are streamed through without being kept
+    public static final int MAX_ENTRY_CHARS = 4 * 1024 * 1024;
+
+    public enum Kind { READ_ONLY, MUTATING, OTHER }
+
+    private static final Set<String> READ_ONLY_PM = Set.of("list", "path", "dump");
+    private static final Set<String> MUTATING_PM = Set.of(
+            "disable", "disable-user", "disable-until-used", "enable", "default-state",
+            "uninstall", "install", "install-existing", "clear", "hide", "unhide", "suspend", "unsuspend");
+
+    private static final Pattern COMMAND_SEPARATOR = Pattern.compile(";|&&|\\|\\|");
+    // Discarding output or merging stderr writes nothing anywhere
+    private static final Pattern DISCARD = Pattern.compile("\\d?>\\s*/dev/null|2>&1");
+    // Other redirections, pipes and substitutions can write or run anything
+    private static final Pattern SHELL_SPECIAL = Pattern.compile("[<>|`]|\\$\\(");
+    private static final Pattern ANY_BOUNDARY = Pattern.compile("[;&|<>`()$]+");
+
+    private record Entry(String serial, String stdout, long expiresAt) {}
+
+    private final long ttlMillis;
+    private final int maxEntries;
+    private final LinkedHashMap<String, Entry> entries;
+    private final Map<String, AtomicLong> generations = new ConcurrentHashMap<>();
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder invalidations = new LongAdder();
+
+    public AdbResultCache() {
+        this(DEFAULT_TTL_MS, DEFAULT_MAX_ENTRIES);
+    }
+
+    public AdbResultCache(long ttlMillis, int maxEntries) {
+        this.ttlMillis = ttlMillis;
+        this.maxEntries = Math.max(1, maxEntries);
+        // Access-ordered so the least recently used entry is evicted first
+        this.entries = new LinkedHashMap<>(64, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+                return size() > AdbResultCache.this.maxEntries;
+            }
+        };
+    }
+
+    /**
+     * Classifies `-s <serial> shell ...` commands; everything else is OTHER.
+     * Compound shell commands (`a; b && c`) are read-only only if every part is
+     * (echo counts as read-only), and mutating if any part is. Redirecting to
+     * /dev/null is allowed; commands with other redirections, pipes or
+     * substitutions are never read-only: they are mutating if any embedded
+     * command is, otherwise OTHER.
+     */
+    public static Kind classify(String... args) {
+        if (args.length < 4 || !"-s".equals(args[0]) || !"shell".equals(args[2])) return Kind.OTHER;
+        String command = DISCARD.matcher(String.join(" ", Arrays.asList(args).subList(3, args.length))).replaceAll(" ");
+        if (SHELL_SPECIAL.matcher(command.replace("||", ";")).find()) {
+            for (String part : ANY_BOUNDARY.split(command)) {
+                String[] words = part.trim().split("\\s+");
+                if (!words[0].isEmpty() && classifyWords(words) == Kind.MUTATING) return Kind.MUTATING;
+            }
+            return Kind.OTHER;
+        }
+        Kind result = null;
+        for (String part : COMMAND_SEPARATOR.split(command)) {
+            String[] words = part.trim().split("\\s+");
+            if (words.length == 0 || words[0].isEmpty()) continue;
+            Kind kind = classifyWords(words);
+            if (kind == Kind.MUTATING) return Kind.MUTATING;
+            if (kind == Kind.OTHER) result = Kind.OTHER;
+            else if (result == null) result = Kind.READ_ONLY;
+        }
+        return result == null ? Kind.OTHER : result;
+    }
+
+    private static Kind classifyWords(String[] words) {
+        String cmd = words[0];
+        String sub = words.length > 1 ? words[1] : "";
+        if ("cmd".equals(cmd) && "package".equals(sub)) {
+            cmd = "pm";
+            sub = words.length > 2 ? words[2] : "";
+        }
+        return switch (cmd) {
+            case "getprop", "dumpsys", "echo" -> Kind.READ_ONLY;
+            case "pm" -> READ_ONLY_PM.contains(sub) ? Kind.READ_ONLY
+                    : MUTATING_PM.contains(sub) ? Kind.MUTATING : Kind.OTHER;
+            default -> Kind.OTHER;
+        };
+    }
+
+    /** Current invalidation generation for a serial; pass it back to {@link #put}. */
+    public long generation(String serial) {
+        return generations.computeIfAbsent(serial, s -> new AtomicLong()).get();
+    }
+
+    /** Returns cached stdout for a read-only command, or null on a miss or expiry. */
+    public synchronized String get(String... args) {
+        String key = key(args);
+        Entry e = entries.get(key);
+        if (e == null || e.expiresAt() < System.currentTimeMillis()) {
+            if (e != null) entries.remove(key);
+            misses.increment();
+            return null;
+        }
+        hits.increment();
+        return e.stdout();
+    }
+
+    /**
+     * Stores output captured while {@code generation} was current. If the device
+     * was mutated while the query ran, the result is stale and is dropped.
+     */
+    public synchronized void put(long generation, String[] args, String stdout) {
+        String serial = args[1];
+        if (generation(serial) != generation || stdout.length() > MAX_ENTRY_CHARS) return;
+        entries.put(key(args), new Entry(serial, stdout, System.currentTimeMillis() + ttlMillis));
+    }
+
+    /** Drops every cached result for a device. */
+    public synchronized void invalidate(String serial) {
+        generations.computeIfAbsent(serial, s -> new AtomicLong()).incrementAndGet();
+        invalidations.increment();
+        Iterator<Entry> it = entries.values().iterator();
+        while (it.hasNext()) {
+            if (it.next().serial().equals(serial)) it.remove();
+        }
+    }
+
+    public synchronized void clear() {
+        entries.clear();
+    }
+
+    public long hits() { return hits.sum(); }
+    public long misses() { return misses.sum(); }
+    public long invalidations() { return invalidations.sum(); }
+    public synchronized int size() { return entries.size(); }
+
+    public String stats() {
+        return "hits=" + hits() + " misses=" + misses() + " invalidations=" + invalidations() + " entries=" + size();
+    }
+
+    private static String key(String... args) {
+        return String.join("\u0000", args);
+    }
+}
@@ -5,45 +5,213 @@ import java.io.IOException;
 import java.io.InputStreamReader;
 import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
 
 /**
  * Minimal ADB command runner. Assumes 'adb' is on PATH for now.
  * Later we can inject a configurable adbPath.
+ *
+ * In session mode, `-s <serial> shell ...` commands are multiplexed over one
+ * long-lived shell per device instead of forking a new adb client each time.
  */
-public class AdbRunner {
+public class AdbRunner implements AutoCloseable {
+    // How long to stop trying to open a shell session after one failed to start
+    private static final long SESSION_RETRY_MS = 10_000;
+    // Transport that ran this thread's command in progress, for its JFR event
+    private static final ThreadLocal<String> currentTransport = new ThreadLocal<>();
+    public static final long DEFAULT_IDLE_TIMEOUT_MS = 60_000;
+
     private final String adbExecutable;
+    private final boolean sessionMode;
+    private final Map<String, AdbShellSession> sessions = new ConcurrentHashMap<>();
+    private final Map<String, Long> sessionFailures = new ConcurrentHashMap<>();
+    private volatile long idleTimeoutMs = DEFAULT_IDLE_TIMEOUT_MS;
+    private AdbScheduler scheduler = new AdbScheduler();
+    private volatile AdbResultCache cache;
 
     public AdbRunner() {
         this("adb");
     }
 
     public AdbRunner(String adbExecutable) {
+        this(adbExecutable, false);
+    }
+
+    public AdbRunner(String adbExecutable, boolean sessionMode) {
         this.adbExecutable = adbExecutable;
+        this.sessionMode = sessionMode;
     }
 
     public CommandResult run(String... args) {
+        StringBuilder sb = new StringBuilder();
+        CommandResult res = stream(line -> sb.append(line).append('\n'), args);
+        String stdout = sb.toString();
+        if (res.exitCode() != 0) {
+            System.err.println("AdbRunner: Output: " + stdout.substring(0, Math.min(500, stdout.length())));
+        }
+        return new CommandResult(res.exitCode(), stdout, res.stderr());
+    }
+
+    /**
+     * Runs a command on a virtual thread, limited by the scheduler's per-device and
+     * global permits. The serial is taken from a leading `-s <serial>`.
+     */
+    public CompletableFuture<CommandResult> runAsync(String... args) {
+        String serial = args.length >= 2 && "-s".equals(args[0]) ? args[1] : null;
+        return scheduler.submit(serial, () -> run(args));
+    }
+
+    /**
+     * How long a shell-session or socket command may produce nothing before it
+     * is treated as hung and fails; for sessions it applies to new sessions.
+     */
+    public void setIdleTimeout(long millis) {
+        this.idleTimeoutMs = millis;
+    }
+
+    public long getIdleTimeout() {
+        return idleTimeoutMs;
+    }
+
+    public AdbScheduler getScheduler() {
+        return scheduler;
+    }
+
+    /** Replaces the scheduler (e.g. with configured limits); the old one is shut down once idle. */
+    public void setScheduler(AdbScheduler scheduler) {
+        AdbScheduler old = this.scheduler;
+        this.scheduler = scheduler;
+        old.close();
+    }
+
+    /**
+     * Runs a command and hands each output line (stdout and stderr merged) to
+     * {@code onLine} as soon as it is read. Nothing is accumulated, so memory stays
+     * bounded however large the output is; the returned result has an empty stdout.
+     * Read-only device queries are served from the result cache when one is set.
+     * Each call is recorded as an {@link AdbCommandEvent} when JFR is recording.
+     */
+    public CommandResult stream(Consumer<String> onLine, String... args) {
+        AdbCommandEvent event = new AdbCommandEvent();
+        if (!event.isEnabled()) return streamCached(onLine, null, args);
+
+        event.begin();
+        currentTransport.remove();
+        int[] lines = {0};
+        long[] chars = {0};
+        CommandResult res = streamCached(line -> {
+            lines[0]++;
+            chars[0] += line.length() + 1;
+            onLine.accept(line);
+        }, event, args);
+        event.end();
+        if (event.shouldCommit()) {
+            event.serial = args.length >= 2 && "-s".equals(args[0]) ? args[1] : "";
+            event.command = String.join(" ", args);
+            if (event.transport == null) event.transport = currentTransport.get() != null ? currentTransport.get() : transportName();
+            event.exitCode = res.exitCode();
+            event.outputLines = lines[0];
+            event.outputChars = chars[0];
+            event.commit();
+        }
+        return res;
+    }
+
+    private CommandResult streamCached(Consumer<String> onLine, AdbCommandEvent event, String... args) {
+        AdbResultCache c = cache;
+        if (c == null) return execute(onLine, args);
+        switch (AdbResultCache.classify(args)) {
+            case READ_ONLY -> {
+                String cached = c.get(args);
+                if (cached != null) {
+                    System.out.println("AdbRunner: Cached: " + String.join(" ", args));
+                    if (event != null) event.transport = "cache";
+                    cached.lines().forEach(onLine);
+                    return new CommandResult(0, "", "");
+                }
+                long generation = c.generation(args[1]);
+                StringBuilder copy = new StringBuilder();
+                CommandResult res = execute(line -> {
+                    onLine.accept(line);
+                    if (copy.length() <= AdbResultCache.MAX_ENTRY_CHARS) copy.append(line).append('\n');
+                }, args);
+                if (res.isSuccess()) c.put(generation, args, copy.toString());
+                return res;
+            }
+            case MUTATING -> {
+                try {
+                    return execute(onLine, args);
+                } finally {
+                    c.invalidate(args[1]);
+                }
+            }
+            default -> {
+                return execute(onLine, args);
+            }
+        }
+    }
+
+    public AdbResultCache getCache() {
+        return cache;
+    }
+
+    /** Sets the cache for read-only queries; null disables caching. */
+    public void setCache(AdbResultCache cache) {
+        this.cache = cache;
+    }
+
+    /**
+     * Records the transport that is running the current command, which may not be
+     * the runner's own when it falls back (a dead session to spawn, a socket to the CLI).
+     */
+    protected static void ranOn(String transport) {
+        currentTransport.set(transport);
+    }
+
+    /** Name of the transport reported in JFR events when the one that ran a command wasn't recorded. */
+    protected String transportName() {
+        return sessionMode ? "session" : "spawn";
+    }
+
+    /**
+     * Transport hook: actually runs the command and streams its output lines.
+     * Subclasses that talk to adb differently override this.
+     */
+    protected CommandResult execute(Consumer<String> onLine, String... args) {
+        if (sessionMode) {
+            CommandResult viaSession = streamInSession(onLine, args);
+            if (viaSession != null) return viaSession;
+        }
+        return spawn(onLine, args);
+    }
+
+    private CommandResult spawn(Consumer<String> onLine, String... args) {
         List<String> cmd = new ArrayList<>();
         cmd.add(adbExecutable);
         for (String a : args) cmd.add(a);
-        
+
         // Log command being executed
         System.out.println("AdbRunner: Executing: " + String.join(" ", cmd));
-        
+        ranOn("spawn");
+
         ProcessBuilder pb = new ProcessBuilder(cmd);
         // Merge stderr into stdout to avoid potential deadlocks when outputs are large
         pb.redirectErrorStream(true);
         try {
             Process p = pb.start();
-            String stdout = readStream(p.getInputStream());
+            readLines(p.getInputStream(), onLine);
             int code = p.waitFor();
-            
+
             if (code != 0) {
                 System.err.println("AdbRunner: Command failed with exit code " + code);
-                System.err.println("AdbRunner: Output: " + stdout.substring(0, Math.min(500, stdout.length())));
             }
-            
-            return new CommandResult(code, stdout, "");
+
+            return new CommandResult(code, "", "");
         } catch (InterruptedException ie) {
             Thread.currentThread().interrupt();
             return new CommandResult(-1, "", "Interrupted");
@@ -54,14 +222,86 @@ public class AdbRunner {
         }
     }
 
-    private String readStream(java.io.InputStream in) throws IOException {
+    /**
+     * Runs `-s <serial> shell <cmd...>` over the device's shell session.
+     * Returns null when the command is not a shell command or the session is
+     * unavailable, so the caller falls back to spawning adb. If the session dies
+     * during a command, only a read-only command that printed nothing is re-run
+     * that way; anything else may already have taken effect and fails instead,
+     * as does a command killed by the idle timeout.
+     */
+    private CommandResult streamInSession(Consumer<String> onLine, String... args) {
+        if (args.length < 4 || !"-s".equals(args[0]) || !"shell".equals(args[2])) return null;
+        String serial = args[1];
+        AdbShellSession session = session(serial);
+        if (session == null) return null;
+
+        // adb joins shell arguments with spaces, so do the same here
+        String command = String.join(" ", Arrays.asList(args).subList(3, args.length));
+        System.out.println("AdbRunner: Session[" + serial + "]: " + command);
+        ranOn("session");
+        int[] lines = {0};
+        try {
+            int code = session.exec(command, line -> {
+                lines[0]++;
+                onLine.accept(line);
+            });
+            if (code != 0) {
+                System.err.println("AdbRunner: Command failed with exit code " + code);
+            }
+            return new CommandResult(code, "", "");
+        } catch (IOException e) {
+            sessions.remove(serial, session);
+            sessionFailures.put(serial, System.currentTimeMillis());
+            // Re-running would duplicate output, repeat a mutation or hang again
+            if (lines[0] > 0 || session.timedOut() || AdbResultCache.classify(args) != AdbResultCache.Kind.READ_ONLY) {
+                System.err.println("AdbRunner: Shell session for " + serial + " failed mid-command: " + e.getMessage());
+                return new CommandResult(-1, "", e.getMessage());
+            }
+            System.err.println("AdbRunner: Shell session for " + serial + " died, falling back to spawn: " + e.getMessage());
+            return null;
+        }
+    }
+
+    private AdbShellSession session(String serial) {
+        AdbShellSession existing = sessions.get(serial);
+        if (existing != null && existing.isAlive()) return existing;
+        if (existing != null) sessions.remove(serial, existing);
+
+        Long failedAt = sessionFailures.get(serial);
+        if (failedAt != null && System.currentTimeMillis() - failedAt < SESSION_RETRY_MS) return null;
+
+        return sessions.computeIfAbsent(serial, s -> {
+            try {
+                System.out.println("AdbRunner: Opening shell session for " + s);
+                return new AdbShellSession(adbExecutable, s, idleTimeoutMs);
+            } catch (IOException e) {
+                System.err.println("AdbRunner: Could not open shell session for " + s + ": " + e.getMessage());
+                sessionFailures.put(s, System.currentTimeMillis());
+                return null;
+            }
+        });
+    }
+
+    /**
+     * Stops the scheduler and, once the work already running on it has
+     * finished, closes all open shell sessions.
+     */
+    @Override
+    public void close() {
+        scheduler.close();
+        scheduler.drained().thenRun(() -> {
+            for (AdbShellSession s : sessions.values()) s.close();
+            sessions.clear();
+        });
+    }
+
+    private static void readLines(java.io.InputStream in, Consumer<String> onLine) throws IOException {
         try (BufferedReader br = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8))) {
-            StringBuilder sb = new StringBuilder();
             String line;
             while ((line = br.readLine()) != null) {
-                sb.append(line).append('\n');
+                onLine.accept(line);
             }
-            return sb.toString();
         }
     }
 }
@@ -0,0 +1,109 @@
+package core;
+
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * Runs ADB work on virtual threads while capping how many commands hit one
+ * device at a time and how many run in total, so the adb daemon on a device is
+ * never flooded by parallel callers. Closing lets work already started (and
+ * anything it submits) finish before the executor shuts down.
+ */
+public class AdbScheduler implements AutoCloseable {
+    public static final int DEFAULT_PER_DEVICE = 2;
+    public static final int DEFAULT_GLOBAL = 8;
+
+    private final ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+    private final int perDevice;
+    private final Semaphore global;
+    private final Map<String, Semaphore> devicePermits = new ConcurrentHashMap<>();
+    // Tasks submitted and not yet finished
+    private final AtomicInteger active = new AtomicInteger();
+    private final CompletableFuture<Void> drained = new CompletableFuture<>();
+    private volatile boolean closed;
+
+    public AdbScheduler() {
+        this(DEFAULT_PER_DEVICE, DEFAULT_GLOBAL);
+    }
+
+    public AdbScheduler(int perDevice, int global) {
+        this.perDevice = Math.max(1, perDevice);
+        this.global = new Semaphore(Math.max(1, global), true);
+    }
+
+    /**
+     * Runs {@code work} once a permit for {@code serial} (if any) and a global
+     * permit are free. Permits are always taken device first, then global, so two
+     * tasks can never wait on each other.
+     */
+    public <T> CompletableFuture<T> submit(String serial, Supplier<T> work) {
+        return CompletableFuture.supplyAsync(() -> {
+            Semaphore device = serial == null ? null
+                    : devicePermits.computeIfAbsent(serial, s -> new Semaphore(perDevice, true));
+            try {
+                if (device != null) device.acquire();
+                try {
+                    global.acquire();
+                    try {
+                        return work.get();
+                    } finally {
+                        global.release();
+                    }
+                } finally {
+                    if (device != null) device.release();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new CompletionException(e);
+            }
+        }, this::execute);
+    }
+
+    /** Runs background work (e.g. a UI task) on a virtual thread without taking permits. */
+    public void execute(Runnable task) {
+        active.incrementAndGet();
+        try {
+            executor.execute(() -> {
+                try {
+                    task.run();
+                } finally {
+                    finished();
+                }
+            });
+        } catch (RuntimeException e) {
+            finished();
+            throw e;
+        }
+    }
+
+    private void finished() {
+        if (active.decrementAndGet() == 0 && closed) shutdown();
+    }
+
+    /**
+     * Stops the executor once the tasks already running are done; they may
+     * still submit follow-up work until then (e.g. an apply batch's commands).
+     */
+    @Override
+    public void close() {
+        closed = true;
+        if (active.get() == 0) shutdown();
+    }
+
+    /** Completes once the scheduler has been closed and all its work has finished. */
+    public CompletableFuture<Void> drained() {
+        return drained;
+    }
+
+    private void shutdown() {
+        executor.shutdown();
+        drained.complete(null);
+    }
+}
@@ -0,0 +1,140 @@
+package core;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.UUID;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+
+/**
+ * A long-lived `adb -s <serial> shell` process that runs commands one after another.
+ * Every command is followed by an echo of a per-session sentinel plus the command's
+ * exit code, which marks where its output ends on the shared stdout stream.
+ * A command that produces no output for the idle timeout is treated as hung:
+ * the session is closed so the blocked read returns and the caller can fall back.
+ */
+class AdbShellSession implements AutoCloseable {
+    private static final ScheduledExecutorService WATCHDOG = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread t = new Thread(r, "adb-shell-watchdog");
+        t.setDaemon(true);
+        return t;
+    });
+
+    private final String serial;
+    private final Process process;
+    private final BufferedWriter stdin;
+    private final BufferedReader stdout;
+    private final String sentinel;
+    private final long idleTimeoutNanos;
+    private volatile boolean broken;
+    private volatile boolean timedOut;
+    private volatile long lastReadNanos;
+    // Pending idle check for the running command, null between commands
+    private final AtomicReference<ScheduledFuture<?>> watchdog = new AtomicReference<>();
+
+    AdbShellSession(String adbExecutable, String serial) throws IOException {
+        this(adbExecutable, serial, AdbRunner.DEFAULT_IDLE_TIMEOUT_MS);
+    }
+
+    AdbShellSession(String adbExecutable, String serial, long idleTimeoutMs) throws IOException {
+        this.serial = serial;
+        this.idleTimeoutNanos = TimeUnit.MILLISECONDS.toNanos(idleTimeoutMs);
+        ProcessBuilder pb = new ProcessBuilder(adbExecutable, "-s", serial, "shell");
+        pb.redirectErrorStream(true);
+        this.process = pb.start();
+        this.stdin = new BufferedWriter(new OutputStreamWriter(process.getOutputStream(), StandardCharsets.UTF_8));
+        this.stdout = new BufferedReader(new InputStreamReader(process.getInputStream(), StandardCharsets.UTF_8));
+        this.sentinel = "__UADB_" + UUID.randomUUID().toString().replace("-", "") + "__";
+    }
+
+    boolean isAlive() {
+        return !broken && process.isAlive();
+    }
+
+    /**
+     * Runs one shell command line, handing each output line to {@code onLine} as it
+     * is read, and returns the exit code.
+     * The command runs in a subshell so `exit` or `cd` cannot affect the session,
+     * and its stdin is detached so it can never swallow the next command.
+     * Any I/O failure or idle timeout marks the session dead; the caller is
+     * expected to fall back.
+     */
+    synchronized int exec(String command, Consumer<String> onLine) throws IOException {
+        if (!isAlive()) throw new IOException("Shell session for " + serial + " is closed");
+        lastReadNanos = System.nanoTime();
+        watchdog.set(WATCHDOG.schedule(this::checkIdle, idleTimeoutNanos, TimeUnit.NANOSECONDS));
+        try {
+            stdin.write("( " + command + "\n) </dev/null 2>&1; echo \"" + sentinel + " $?\"\n");
+            stdin.flush();
+
+            String line;
+            while ((line = stdout.readLine()) != null) {
+                lastReadNanos = System.nanoTime();
+                int idx = line.indexOf(sentinel);
+                if (idx < 0) {
+                    onLine.accept(line);
+                    continue;
+                }
+                // Output without a trailing newline ends up on the sentinel line
+                if (idx > 0) onLine.accept(line.substring(0, idx));
+                // The command may have been killed by the watchdog just before finishing
+                if (timedOut) break;
+                return parseExitCode(line.substring(idx + sentinel.length()));
+            }
+            throw new IOException("Shell session for " + serial + " ended unexpectedly");
+        } catch (IOException e) {
+            close();
+            if (timedOut) throw new IOException("Shell session for " + serial + " timed out", e);
+            throw e;
+        } finally {
+            ScheduledFuture<?> check = watchdog.getAndSet(null);
+            if (check != null) check.cancel(false);
+        }
+    }
+
+    /** True once a command was killed for being silent longer than the idle timeout. */
+    boolean timedOut() {
+        return timedOut;
+    }
+
+    /** Closes the session if the running command has been silent too long, else checks again later. */
+    private void checkIdle() {
+        ScheduledFuture<?> current = watchdog.get();
+        if (current == null) return;
+        long idle = System.nanoTime() - lastReadNanos;
+        if (idle < idleTimeoutNanos) {
+            ScheduledFuture<?> next = WATCHDOG.schedule(this::checkIdle, idleTimeoutNanos - idle, TimeUnit.NANOSECONDS);
+            // The command finished meanwhile
+            if (!watchdog.compareAndSet(current, next)) next.cancel(false);
+            return;
+        }
+        if (!watchdog.compareAndSet(current, null)) return;
+        timedOut = true;
+        close();
+    }
+
+    private static int parseExitCode(String s) {
+        try {
+            return Integer.parseInt(s.trim());
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    @Override
+    public void close() {
+        broken = true;
+        try { stdin.close(); } catch (IOException ignored) {}
+        // Children may hold stdout open and keep a blocked read waiting
+        process.descendants().forEach(ProcessHandle::destroy);
+        process.destroy();
+    }
+}
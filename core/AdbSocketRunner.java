@@ -0,0 +1,178 @@
+package core;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.SocketTimeoutException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.util.Arrays;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+
+/**
+ * AdbRunner that talks to the adb server socket directly instead of forking the
+ * adb client. Handles `devices [-l]` and `-s <serial> shell ...` (via shell,v2 so
+ * exit codes survive); anything else goes through the regular CLI path, as does
+ * a command the server could not be reached for (the CLI also starts the server).
+ * A connection that carries no data for the idle timeout is closed and the
+ * command fails. Once a shell command has been sent it is only re-run through
+ * the CLI if it is read-only and produced no output.
+ */
+public class AdbSocketRunner extends AdbRunner {
+    private static final ScheduledExecutorService WATCHDOG = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread t = new Thread(r, "adb-socket-watchdog");
+        t.setDaemon(true);
+        return t;
+    });
+
+    private final InetSocketAddress server;
+
+    public AdbSocketRunner(String adbExecutable) {
+        this(adbExecutable, AdbProtocol.defaultServerAddress());
+    }
+
+    public AdbSocketRunner(String adbExecutable, InetSocketAddress server) {
+        super(adbExecutable);
+        this.server = server;
+    }
+
+    @Override
+    protected String transportName() {
+        return "socket";
+    }
+
+    @Override
+    protected CommandResult execute(Consumer<String> onLine, String... args) {
+        int[] lines = {0};
+        boolean[] sent = {false};
+        Consumer<String> counting = line -> {
+            lines[0]++;
+            onLine.accept(line);
+        };
+        boolean devices = false;
+        try {
+            if (args.length >= 1 && args.length <= 2 && "devices".equals(args[0])) {
+                boolean longFormat = args.length == 2 && "-l".equals(args[1]);
+                devices = args.length == 1 || longFormat;
+                if (devices) return devices(longFormat, counting);
+            } else if (args.length >= 4 && "-s".equals(args[0]) && "shell".equals(args[2])) {
+                String command = String.join(" ", Arrays.asList(args).subList(3, args.length));
+                return shell(args[1], command, counting, sent);
+            }
+        } catch (IOException e) {
+            // Re-running would duplicate output, repeat a mutation or hang again
+            boolean safe = !sent[0] || (lines[0] == 0 && !(e instanceof SocketTimeoutException)
+                    && (devices || AdbResultCache.classify(args) == AdbResultCache.Kind.READ_ONLY));
+            if (!safe) {
+                System.err.println("AdbSocketRunner: Command failed mid-way: " + e.getMessage());
+                return new CommandResult(-1, "", e.getMessage());
+            }
+            System.err.println("AdbSocketRunner: " + e.getMessage() + ", falling back to adb CLI");
+        }
+        return super.execute(onLine, args);
+    }
+
+    private CommandResult devices(boolean longFormat, Consumer<String> onLine) throws IOException {
+        System.out.println("AdbSocketRunner: host:devices" + (longFormat ? "-l" : ""));
+        ranOn("socket");
+        try (SocketChannel ch = AdbProtocol.connect(server); IdleWatchdog watchdog = new IdleWatchdog(ch, getIdleTimeout())) {
+            AdbProtocol.request(ch, longFormat ? "host:devices-l" : "host:devices");
+            String body = watchdog.check(() -> AdbProtocol.readHexString(ch));
+            // Same shape as `adb devices` so existing parsers keep working
+            onLine.accept("List of devices attached");
+            body.lines().forEach(onLine);
+            return new CommandResult(0, "", "");
+        }
+    }
+
+    private CommandResult shell(String serial, String command, Consumer<String> onLine, boolean[] sent) throws IOException {
+        System.out.println("AdbSocketRunner: [" + serial + "] shell,v2: " + command);
+        ranOn("socket");
+        try (SocketChannel ch = AdbProtocol.connect(server); IdleWatchdog watchdog = new IdleWatchdog(ch, getIdleTimeout())) {
+            AdbProtocol.request(ch, "host:transport:" + serial);
+            // From here the device may have started running the command
+            sent[0] = true;
+            AdbProtocol.request(ch, "shell,v2,raw:" + command);
+
+            // stderr is merged into stdout, matching the CLI path
+            LineSplitter splitter = new LineSplitter(onLine);
+            while (true) {
+                ByteBuffer header = watchdog.check(() -> AdbProtocol.readShellHeader(ch));
+                int id = header.get();
+                int len = header.getInt();
+                ByteBuffer data = watchdog.check(() -> AdbProtocol.readFully(ch, len));
+                if (id == AdbProtocol.SHELL_STDOUT || id == AdbProtocol.SHELL_STDERR) {
+                    splitter.write(data);
+                } else if (id == AdbProtocol.SHELL_EXIT) {
+                    splitter.finish();
+                    int code = len > 0 ? data.get() & 0xff : -1;
+                    if (code != 0) {
+                        System.err.println("AdbSocketRunner: Command failed with exit code " + code);
+                    }
+                    return new CommandResult(code, "", "");
+                }
+            }
+        }
+    }
+
+    private interface Read<T> {
+        T read() throws IOException;
+    }
+
+    /**
+     * Closes a channel that has carried no data for the idle timeout, which
+     * unblocks its reader; a blocking SocketChannel ignores SO_TIMEOUT.
+     */
+    private static final class IdleWatchdog implements AutoCloseable {
+        private final SocketChannel channel;
+        private final long timeoutNanos;
+        private final AtomicReference<ScheduledFuture<?>> pending = new AtomicReference<>();
+        private volatile long lastReadNanos = System.nanoTime();
+        private volatile boolean fired;
+
+        IdleWatchdog(SocketChannel channel, long timeoutMillis) {
+            this.channel = channel;
+            this.timeoutNanos = TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+            pending.set(WATCHDOG.schedule(this::checkIdle, timeoutNanos, TimeUnit.NANOSECONDS));
+        }
+
+        /** Runs one read, reporting a read cut short by the watchdog as a timeout. */
+        <T> T check(Read<T> read) throws IOException {
+            try {
+                T result = read.read();
+                lastReadNanos = System.nanoTime();
+                return result;
+            } catch (IOException e) {
+                if (fired) throw new SocketTimeoutException("No data from adb server for " + TimeUnit.NANOSECONDS.toMillis(timeoutNanos) + " ms");
+                throw e;
+            }
+        }
+
+        private void checkIdle() {
+            ScheduledFuture<?> current = pending.get();
+            if (current == null) return;
+            long idle = System.nanoTime() - lastReadNanos;
+            if (idle < timeoutNanos) {
+                ScheduledFuture<?> next = WATCHDOG.schedule(this::checkIdle, timeoutNanos - idle, TimeUnit.NANOSECONDS);
+                if (!pending.compareAndSet(current, next)) next.cancel(false);
+                return;
+            }
+            if (!pending.compareAndSet(current, null)) return;
+            fired = true;
+            try {
+                channel.close();
+            } catch (IOException ignored) {
+            }
+        }
+
+        @Override
+        public void close() {
+            ScheduledFuture<?> check = pending.getAndSet(null);
+            if (check != null) check.cancel(false);
+        }
+    }
+}
@@ -0,0 +1,26 @@
+package core;
+
+import jdk.jfr.Category;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * JFR event covering one disable/uninstall/enable batch from the apply loop.
+ */
+@Name("uadb.ApplyBatch")
+@Label("Apply Batch")
+@Category({"Universal ADB Debloater", "Apply"})
+public class ApplyBatchEvent extends Event {
+    @Label("Serial")
+    public String serial;
+
+    @Label("Operation")
+    public String operation;
+
+    @Label("Packages")
+    public int packages;
+
+    @Label("Succeeded")
+    public int succeeded;
+}
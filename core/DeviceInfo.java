@@ -1,14 +1,50 @@
 package core;
 
-public record DeviceInfo(String serial, String manufacturer, String model, String androidVersion) {
+/**
+ * A device as known so far. serial/state/product/device/transportId come for
+ * free from `adb devices -l`; manufacturer and androidVersion need getprop.
+ * Fields that are not known yet are empty strings.
+ */
+public record DeviceInfo(
+        String serial,
+        String state,
+        String manufacturer,
+        String model,
+        String androidVersion,
+        String product,
+        String device,
+        String transportId
+) {
+    public DeviceInfo(String serial, String manufacturer, String model, String androidVersion) {
+        this(serial, "device", manufacturer, model, androidVersion, "", "", "");
+    }
+
+    public boolean isReady() {
+        return "device".equals(state);
+    }
+
+    /** Fills in getprop-derived fields, keeping listing values where getprop had none. */
+    public DeviceInfo withProperties(String manufacturer, String model, String androidVersion) {
+        return new DeviceInfo(serial, state,
+                orElse(manufacturer, this.manufacturer), orElse(model, this.model), orElse(androidVersion, this.androidVersion),
+                product, device, transportId);
+    }
+
     public String displayName() {
-        String mfr = manufacturer == null || manufacturer.isBlank() ? "Unknown" : capitalize(manufacturer);
         String mdl = model == null || model.isBlank() ? "Device" : model;
-        return mfr + " " + mdl + " (" + serial + ")";
+        if (manufacturer == null || manufacturer.isBlank()) {
+            // Listing-only info: the model alone reads better than "Unknown Pixel 7"
+            return (model == null || model.isBlank() ? "Unknown Device" : mdl) + " (" + serial + ")";
+        }
+        return capitalize(manufacturer) + " " + mdl + " (" + serial + ")";
+    }
+
+    private static String orElse(String value, String fallback) {
+        return value == null || value.isBlank() ? (fallback == null ? "" : fallback) : value;
     }
 
     private static String capitalize(String s) {
         if (s == null || s.isEmpty()) return s;
         return s.substring(0,1).toUpperCase() + s.substring(1);
     }
-}
\ No newline at end of file
+}
@@ -1,7 +1,12 @@
 package core;
 
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -9,44 +14,228 @@ import java.util.regex.Pattern;
  * Manages connected devices via ADB.
  */
 public class DeviceManager {
+    public static final String MANUFACTURER = "ro.product.manufacturer";
+    public static final String MODEL = "ro.product.model";
+    public static final String ANDROID_VERSION = "ro.build.version.release";
+
     private final AdbRunner adbRunner;
+    // serial -> full getprop map; dropped when the device detaches, since it may come
+    // back rebooted into an OTA or its serial (emulator-5554, ip:port) may be reused
+    private final Map<String, Map<String, String>> propertyCache = new ConcurrentHashMap<>();
+    // serial -> latest known DeviceInfo (listing metadata, plus getprop fields once loaded)
+    private final Map<String, DeviceInfo> listings = new ConcurrentHashMap<>();
+    private DeviceWatcher watcher;
 
     public DeviceManager(AdbRunner adbRunner) {
         this.adbRunner = adbRunner;
     }
 
-    private static final Pattern DEVICE_LINE = Pattern.compile("^(\\S+)\\s+device(.*)$");
+    // Start of the key:value attributes that follow the state in `devices -l`
+    private static final Pattern ATTRIBUTE_START = Pattern.compile("\\s(usb|product|model|device|transport_id|features):");
+    private static final Pattern ATTRIBUTE = Pattern.compile("(\\w+):(\\S+)");
 
-    public List<String> listDeviceSerials() {
+    /**
+     * Lists all devices adb knows about, in any state, with the metadata that
+     * `devices -l` already carries. No per-device round-trips are made.
+     */
+    public List<DeviceInfo> listDevices() {
         CommandResult result = adbRunner.run("devices", "-l");
-        List<String> serials = new ArrayList<>();
         if (!result.isSuccess()) {
-            return serials; // empty if failed
+            return new ArrayList<>(); // empty if failed
         }
-        for (String line : result.stdout().split("\n")) {
-            line = line.trim();
-            if (line.isEmpty() || line.startsWith("List of devices")) continue;
-            Matcher m = DEVICE_LINE.matcher(line);
-            if (m.find()) {
-                serials.add(m.group(1));
-            }
+        List<DeviceInfo> devices = new ArrayList<>();
+        for (DeviceInfo d : parseDeviceListing(result.stdout())) devices.add(rememberListing(d));
+        return devices;
+    }
+
+    public List<String> listDeviceSerials() {
+        List<String> serials = new ArrayList<>();
+        for (DeviceInfo d : listDevices()) {
+            if (d.isReady()) serials.add(d.serial());
         }
         return serials;
     }
 
+    /**
+     * Parses `adb devices -l` (or a track-devices-l payload) into DeviceInfo
+     * records. The state may contain spaces ("no permissions (...)"), so it runs
+     * up to the first known attribute. Models use '_' for spaces in the listing.
+     */
+    public static List<DeviceInfo> parseDeviceListing(String output) {
+        List<DeviceInfo> devices = new ArrayList<>();
+        for (String line : output.split("\n")) {
+            line = line.trim();
+            if (line.isEmpty() || line.startsWith("List of devices") || line.startsWith("*")) continue;
+            String[] head = line.split("\\s+", 2);
+            if (head.length < 2) continue;
+            String rest = head[1];
+            Matcher start = ATTRIBUTE_START.matcher(" " + rest);
+            int attrsAt = start.find() ? start.start() : rest.length();
+            String state = rest.substring(0, attrsAt).trim();
+
+            Map<String, String> attrs = new HashMap<>();
+            Matcher m = ATTRIBUTE.matcher(rest.substring(attrsAt));
+            while (m.find()) attrs.put(m.group(1), m.group(2));
+            devices.add(new DeviceInfo(head[0], state, "",
+                    attrs.getOrDefault("model", "").replace('_', ' '), "",
+                    attrs.getOrDefault("product", ""), attrs.getOrDefault("device", ""),
+                    attrs.getOrDefault("transport_id", "")));
+        }
+        return devices;
+    }
+
+    /** Last listing entry for a serial, or a bare record if it hasn't been listed. */
+    public DeviceInfo getListedDevice(String serial) {
+        return listings.getOrDefault(serial, new DeviceInfo(serial, "", "", ""));
+    }
+
+    /**
+     * Records fresh listing metadata (state, transport id, ...) for a device while
+     * keeping getprop-derived fields already known for it. Returns the merged info.
+     */
+    public DeviceInfo rememberListing(DeviceInfo device) {
+        return listings.merge(device.serial(), device,
+                (old, listed) -> listed.withProperties(old.manufacturer(), old.model(), old.androidVersion()));
+    }
+
+    /**
+     * Full device info: listing metadata plus manufacturer and Android version,
+     * which only getprop can provide.
+     */
     public DeviceInfo getDeviceInfo(String serial) {
-        // Use individual getprop calls - batching doesn't work reliably across all devices
-        String manufacturer = getProp(serial, "ro.product.manufacturer");
-        String model = getProp(serial, "ro.product.model");
-        String androidVersion = getProp(serial, "ro.build.version.release");
+        // One `getprop` dump; falls back to individual calls if it can't be parsed
+        Map<String, String> props = getProperties(serial);
+        String manufacturer = props != null ? props.getOrDefault(MANUFACTURER, "") : getSingleProp(serial, MANUFACTURER);
+        String model = props != null ? props.getOrDefault(MODEL, "") : getSingleProp(serial, MODEL);
+        String androidVersion = props != null ? props.getOrDefault(ANDROID_VERSION, "") : getSingleProp(serial, ANDROID_VERSION);
         
         System.out.println("DeviceManager: Device info - Manufacturer: '" + manufacturer + "', Model: '" + model + "', Android: '" + androidVersion + "'");
-        return new DeviceInfo(serial, manufacturer, model, androidVersion);
+        DeviceInfo info = getListedDevice(serial).withProperties(manufacturer, model, androidVersion);
+        listings.put(serial, info);
+        return info;
+    }
+
+    /**
+     * Async variant of {@link #getDeviceInfo}, run within the runner's per-device limit.
+     */
+    public CompletableFuture<DeviceInfo> getDeviceInfoAsync(String serial) {
+        return adbRunner.getScheduler().submit(serial, () -> getDeviceInfo(serial));
+    }
+
+    public CompletableFuture<List<String>> listDeviceSerialsAsync() {
+        return adbRunner.getScheduler().submit(null, this::listDeviceSerials);
+    }
+
+    public CompletableFuture<String> getPropAsync(String serial, String prop) {
+        Map<String, String> props = propertyCache.get(serial);
+        if (props != null) return CompletableFuture.completedFuture(props.getOrDefault(prop, ""));
+        return adbRunner.getScheduler().submit(serial, () -> getProp(serial, prop));
     }
 
+    /**
+     * Returns a property from the device's cached property map, loading the map
+     * with a single `getprop` on first use. If the dump can't be parsed, the
+     * property is fetched on its own instead.
+     */
     public String getProp(String serial, String prop) {
+        Map<String, String> props = getProperties(serial);
+        if (props != null) return props.getOrDefault(prop, "");
+        return getSingleProp(serial, prop);
+    }
+
+    private String getSingleProp(String serial, String prop) {
         CommandResult res = adbRunner.run("-s", serial, "shell", "getprop", prop);
         if (!res.isSuccess()) return "";
         return res.stdout().trim();
     }
+
+    /**
+     * All system properties of a device, from one cached `getprop` dump.
+     * Returns null when the dump fails or doesn't look like a complete property
+     * list (some OEM builds print garbage), so callers fall back to single lookups.
+     */
+    public Map<String, String> getProperties(String serial) {
+        Map<String, String> cached = propertyCache.get(serial);
+        if (cached != null) return cached;
+
+        CommandResult res = adbRunner.run("-s", serial, "shell", "getprop");
+        if (!res.isSuccess()) return null;
+        Map<String, String> props = parseGetprop(res.stdout());
+        if (!props.containsKey(ANDROID_VERSION) || !props.containsKey(MANUFACTURER)) {
+            System.err.println("DeviceManager: getprop dump for " + serial + " could not be parsed (" + props.size() + " entries), using single lookups");
+            return null;
+        }
+        propertyCache.put(serial, props);
+        return props;
+    }
+
+    /**
+     * Starts pushing attach/detach/state-change events from the adb server to
+     * {@code listener} (on a background thread). A device that detaches has its
+     * cached properties forgotten, so a reattached one is read afresh.
+     */
+    public synchronized void startWatching(Consumer<DeviceWatcher.DeviceEvent> listener) {
+        stopWatching();
+        watcher = new DeviceWatcher(adbRunner, AdbProtocol.defaultServerAddress(), event -> {
+            if (event.change() == DeviceWatcher.Change.DETACHED) invalidateProperties(event.serial());
+            else rememberListing(event.device());
+            listener.accept(event);
+        });
+        watcher.start();
+    }
+
+    public synchronized void stopWatching() {
+        if (watcher != null) {
+            watcher.close();
+            watcher = null;
+        }
+    }
+
+    /**
+     * Forgets the cached properties of a device, and the listing they were merged
+     * into, e.g. after it detached, rebooted or took an OTA.
+     */
+    public void invalidateProperties(String serial) {
+        propertyCache.remove(serial);
+        listings.remove(serial);
+    }
+
+    /**
+     * Parses `getprop` output of the form `[key]: [value]`. Values may span several
+     * lines (the closing bracket is on the last one); CRLF endings and blank lines
+     * between entries are tolerated.
+     */
+    public static Map<String, String> parseGetprop(String output) {
+        Map<String, String> props = new HashMap<>();
+        String key = null;
+        StringBuilder value = new StringBuilder();
+        for (String raw : output.split("\n")) {
+            String line = raw.endsWith("\r") ? raw.substring(0, raw.length() - 1) : raw;
+            if (key != null) {
+                // Inside a multi-line value
+                value.append('\n');
+                if (line.endsWith("]")) {
+                    value.append(line, 0, line.length() - 1);
+                    props.put(key, value.toString());
+                    key = null;
+                } else {
+                    value.append(line);
+                }
+                continue;
+            }
+            if (!line.startsWith("[")) continue;
+            int sep = line.indexOf("]: [");
+            if (sep < 0) continue;
+            String k = line.substring(1, sep);
+            String rest = line.substring(sep + 4);
+            if (rest.endsWith("]")) {
+                props.put(k, rest.substring(0, rest.length() - 1));
+            } else {
+                key = k;
+                value.setLength(0);
+                value.append(rest);
+            }
+        }
+        return props;
+    }
 }
@@ -0,0 +1,146 @@
+package core;
+
+import java.io.IOException;
+import java.net.ConnectException;
+import java.net.InetSocketAddress;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+
+/**
+ * Follows the adb server's `host:track-devices-l` stream and reports devices
+ * being attached, detached or changing state (e.g. unauthorized -> device),
+ * along with the model/product metadata the listing carries.
+ * The server pushes a full device list on every change; this class diffs it
+ * against the previous one so listeners only see what changed. If the server
+ * goes away, the watcher reconnects (starting the server through the runner)
+ * and diffs the new list against the last known one.
+ */
+public class DeviceWatcher implements AutoCloseable {
+    private static final long MIN_BACKOFF_MS = 500;
+    private static final long MAX_BACKOFF_MS = 10_000;
+
+    public enum Change { ATTACHED, DETACHED, STATE_CHANGED }
+
+    /** {@code device} carries the listing metadata; for DETACHED it is the last known entry. */
+    public record DeviceEvent(Change change, DeviceInfo device, String previousState) {
+        public String serial() {
+            return device.serial();
+        }
+
+        /** Current state, or null once the device is gone. */
+        public String state() {
+            return change == Change.DETACHED ? null : device.state();
+        }
+    }
+
+    private final InetSocketAddress server;
+    private final AdbRunner adbRunner;
+    private final Consumer<DeviceEvent> listener;
+    // serial -> last listed entry, only touched by the watcher thread
+    private final Map<String, DeviceInfo> devices = new HashMap<>();
+    private volatile boolean running;
+    private volatile SocketChannel channel;
+    // Whether start-server was already tried in the current outage; watcher thread only
+    private boolean serverStarted;
+    private Thread thread;
+
+    public DeviceWatcher(AdbRunner adbRunner, InetSocketAddress server, Consumer<DeviceEvent> listener) {
+        this.adbRunner = adbRunner;
+        this.server = server;
+        this.listener = listener;
+    }
+
+    public synchronized void start() {
+        if (running) return;
+        running = true;
+        thread = Thread.ofVirtual().name("adb-device-watcher").start(this::watchLoop);
+    }
+
+    private void watchLoop() {
+        long backoff = MIN_BACKOFF_MS;
+        while (running) {
+            try (SocketChannel ch = AdbProtocol.connect(server)) {
+                channel = ch;
+                AdbProtocol.request(ch, "host:track-devices-l");
+                System.out.println("DeviceWatcher: Tracking devices via " + server);
+                backoff = MIN_BACKOFF_MS;
+                serverStarted = false;
+                while (running) {
+                    update(parseDevices(AdbProtocol.readHexString(ch)));
+                }
+            } catch (ConnectException e) {
+                if (!running) break;
+                if (serverStarted) {
+                    System.err.println("DeviceWatcher: adb server still not reachable, retrying in " + backoff + " ms");
+                } else {
+                    // Once per outage; a server that won't come up isn't helped by respawning adb
+                    System.err.println("DeviceWatcher: adb server not reachable, starting it");
+                    adbRunner.run("start-server");
+                    serverStarted = true;
+                }
+            } catch (IOException e) {
+                if (!running) break;
+                System.err.println("DeviceWatcher: Tracking interrupted: " + e.getMessage());
+            }
+            channel = null;
+            try {
+                Thread.sleep(backoff);
+            } catch (InterruptedException e) {
+                break;
+            }
+            backoff = Math.min(backoff * 2, MAX_BACKOFF_MS);
+        }
+    }
+
+    private void update(Map<String, DeviceInfo> current) {
+        for (DeviceEvent e : diff(devices, current)) {
+            try {
+                listener.accept(e);
+            } catch (RuntimeException ex) {
+                System.err.println("DeviceWatcher: Listener failed: " + ex.getMessage());
+            }
+        }
+        devices.clear();
+        devices.putAll(current);
+    }
+
+    /** Parses a device list payload into serial -> DeviceInfo, keeping server order. */
+    public static Map<String, DeviceInfo> parseDevices(String payload) {
+        Map<String, DeviceInfo> result = new LinkedHashMap<>();
+        for (DeviceInfo d : DeviceManager.parseDeviceListing(payload)) result.put(d.serial(), d);
+        return result;
+    }
+
+    public static List<DeviceEvent> diff(Map<String, DeviceInfo> previous, Map<String, DeviceInfo> current) {
+        List<DeviceEvent> events = new ArrayList<>();
+        for (DeviceInfo d : current.values()) {
+            DeviceInfo before = previous.get(d.serial());
+            if (before == null) {
+                events.add(new DeviceEvent(Change.ATTACHED, d, null));
+            } else if (!before.state().equals(d.state())) {
+                events.add(new DeviceEvent(Change.STATE_CHANGED, d, before.state()));
+            }
+        }
+        for (DeviceInfo d : previous.values()) {
+            if (!current.containsKey(d.serial())) {
+                events.add(new DeviceEvent(Change.DETACHED, d, d.state()));
+            }
+        }
+        return events;
+    }
+
+    @Override
+    public synchronized void close() {
+        running = false;
+        SocketChannel ch = channel;
+        if (ch != null) {
+            try { ch.close(); } catch (IOException ignored) {}
+        }
+        if (thread != null) thread.interrupt();
+    }
+}
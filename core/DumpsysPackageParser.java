@@ -0,0 +1,134 @@
+package core;
+
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * Single-pass, line-at-a-time parser for `dumpsys package packages`. Each
+ * `Package [name] (...)` block is turned into a PackageInfo and handed out as
+ * soon as the next block starts, so only one package is held at a time.
+ * Parsing stops at the first top-level section after "Packages:" (e.g.
+ * "Hidden system packages:"), whose entries would duplicate real ones.
+ */
+class DumpsysPackageParser {
+    private final Consumer<PackageInfo> onPackage;
+    private final Function<String, String> labeler;
+    private int count;
+
+    private boolean inPackages;
+    private boolean done;
+    private String pkg;
+    private String codePath;
+    private long versionCode;
+    private int uid;
+    private String installer;
+    private int flags;
+    private int state;
+
+    DumpsysPackageParser(Consumer<PackageInfo> onPackage, Function<String, String> labeler) {
+        this.onPackage = onPackage;
+        this.labeler = labeler;
+    }
+
+    int count() {
+        return count;
+    }
+
+    void accept(String line) {
+        if (done) return;
+        if (!line.startsWith(" ")) {
+            // Top-level section header
+            if (line.startsWith("Packages:")) {
+                inPackages = true;
+            } else if (inPackages && !line.isBlank()) {
+                finish();
+                done = true;
+            }
+            return;
+        }
+        if (!inPackages) return;
+
+        String t = line.trim();
+        if (t.startsWith("Package [")) {
+            flush();
+            int end = t.indexOf(']');
+            if (end > 9) start(t.substring(9, end));
+        } else if (pkg == null) {
+            return;
+        } else if (t.startsWith("userId=") || t.startsWith("appId=")) {
+            uid = (int) number(t, t.indexOf('=') + 1);
+        } else if (t.startsWith("versionCode=")) {
+            versionCode = number(t, 12);
+        } else if (t.startsWith("codePath=")) {
+            codePath = t.substring(9);
+        } else if (t.startsWith("installerPackageName=")) {
+            String v = t.substring(21).trim();
+            installer = "null".equals(v) ? "" : v;
+        } else if (t.startsWith("flags=[")) {
+            flags = parseFlags(t);
+        } else if (t.startsWith("User 0:")) {
+            state = parseUserState(t);
+        }
+    }
+
+    /** Emits the last package; call once the output has ended. */
+    void finish() {
+        flush();
+    }
+
+    private void start(String name) {
+        pkg = name;
+        codePath = "";
+        versionCode = 0;
+        uid = -1;
+        installer = "";
+        flags = 0;
+        state = 0;
+    }
+
+    private void flush() {
+        if (pkg == null) return;
+        boolean system = (flags & PackageInfo.FLAG_SYSTEM) != 0
+                || codePath.startsWith("/system/") || codePath.startsWith("/product/") || codePath.startsWith("/system_ext/");
+        onPackage.accept(new PackageInfo(pkg, labeler.apply(pkg), Recommendation.EMPTY, system, versionCode, uid, installer, flags, state));
+        count++;
+        pkg = null;
+    }
+
+    private static int parseFlags(String t) {
+        // flags=[ SYSTEM HAS_CODE ALLOW_CLEAR_USER_DATA ]
+        String body = " " + t.substring(7).replace(']', ' ') + " ";
+        int f = 0;
+        if (body.contains(" SYSTEM ")) f |= PackageInfo.FLAG_SYSTEM;
+        if (body.contains(" UPDATED_SYSTEM_APP ")) f |= PackageInfo.FLAG_UPDATED_SYSTEM_APP;
+        if (body.contains(" PERSISTENT ")) f |= PackageInfo.FLAG_PERSISTENT;
+        if (body.contains(" DEBUGGABLE ")) f |= PackageInfo.FLAG_DEBUGGABLE;
+        return f;
+    }
+
+    private static int parseUserState(String t) {
+        // User 0: ceDataInode=123 installed=true hidden=false ... enabled=0 ...
+        int s = 0;
+        int installed = t.indexOf(" installed=");
+        if (installed >= 0) {
+            s |= t.startsWith("true", installed + 11) ? PackageInfo.STATE_INSTALLED : PackageInfo.STATE_UNINSTALLED;
+        }
+        int enabled = t.indexOf(" enabled=");
+        if (enabled >= 0) {
+            // 0 = default, 1 = enabled, 2 = disabled, 3 = disabled-user, 4 = disabled-until-used
+            long v = number(t, enabled + 9);
+            if (v >= 2) s |= PackageInfo.STATE_DISABLED;
+        }
+        return s;
+    }
+
+    private static long number(String s, int from) {
+        long v = 0;
+        for (int i = from; i < s.length(); i++) {
+            char c = s.charAt(i);
+            if (c < '0' || c > '9') break;
+            v = v * 10 + (c - '0');
+        }
+        return v;
+    }
+}
@@ -0,0 +1,210 @@
+package core;
+
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+
+/**
+ * Queryable store of the whole persisted history (every entry the journal
+ * still holds, plus this session's). Entries are kept in append order in
+ * primitive columns like {@link HistoryRing}, with secondary indexes from
+ * package (details) and serial codes to the rows that have them, and from
+ * hour buckets to rows. A query walks the smallest index that applies and
+ * checks the remaining conditions on the columns, so "every action on
+ * com.x.y on device S" costs the number of actions on com.x.y, not the size
+ * of the history. The oldest rows can be dropped as the history they mirror
+ * is; once more than half the rows are dropped the columns and indexes are
+ * rebuilt from the live rows, so memory follows the live row count.
+ * Not thread-safe; ActionHistory uses it from the FX thread.
+ */
+final class HistoryIndex {
+    private static final long BUCKET_MS = 60 * 60 * 1000L;
+    private static final int INITIAL_ROWS = 1024;
+    private static final int MAX_ACTIONS = 0xFFFF;
+
+    private long[] times;
+    private int[] serials;
+    private int[] details;
+    private int[] status; // action code (low 16 bits) | exit code as a short (high 16 bits)
+    private int[] durations;
+    private int size;
+    // Rows below this have been dropped
+    private int first;
+
+    private final StringDictionary strings = new StringDictionary();
+    private final StringDictionary actions = new StringDictionary();
+    private boolean actionsOverflowed;
+    // Postings by string code: rows whose details / serial have that code, ascending
+    private final List<IntList> byDetails = new ArrayList<>();
+    private final List<IntList> bySerial = new ArrayList<>();
+    private final NavigableMap<Long, IntList> byBucket = new TreeMap<>();
+
+    HistoryIndex() {
+        clear();
+    }
+
+    /** Number of live rows. */
+    int size() {
+        return size - first;
+    }
+
+    void add(ActionHistory.Entry e) {
+        if (size == times.length) grow();
+        int row = size++;
+        int serial = strings.code(e.getSerial());
+        int detail = strings.code(e.getDetails());
+        int exit = Math.max(Short.MIN_VALUE, Math.min(Short.MAX_VALUE, e.getExitCode()));
+        times[row] = e.getTimeMillis();
+        serials[row] = serial;
+        details[row] = detail;
+        int action = actions.size() < MAX_ACTIONS ? actions.code(e.getAction()) : Math.max(0, actions.find(e.getAction()));
+        if (action == 0 && !e.getAction().isEmpty() && !actionsOverflowed) {
+            actionsOverflowed = true;
+            System.err.println("HistoryIndex: More than " + MAX_ACTIONS + " distinct actions; new ones are indexed without an action");
+        }
+        status[row] = (exit << 16) | action;
+        durations[row] = (int) Math.min(Integer.MAX_VALUE, Math.max(0, e.getDurationMs()));
+        postings(byDetails, detail).add(row);
+        postings(bySerial, serial).add(row);
+        byBucket.computeIfAbsent(Math.floorDiv(e.getTimeMillis(), BUCKET_MS), b -> new IntList()).add(row);
+    }
+
+    /**
+     * Matching entries, oldest first; entries are built as the returned list is
+     * read. The list keeps its own references to the columns and a copy of the
+     * dictionaries, so later appends and clear() don't affect it.
+     */
+    List<ActionHistory.Entry> query(HistoryQuery q) {
+        int pkg = q.pkg() == null ? -1 : strings.find(q.pkg());
+        int serial = q.serial() == null ? -1 : strings.find(q.serial());
+        IntList pkgRows = pkg < 0 ? null : find(byDetails, pkg);
+        IntList serialRows = serial < 0 ? null : find(bySerial, serial);
+        if ((q.pkg() != null && pkgRows == null) || (q.serial() != null && serialRows == null)) return rows(new int[0], 0);
+
+        // Candidates from the most selective index; the rest is checked per row
+        IntList candidates = pkgRows;
+        if (serialRows != null && (candidates == null || serialRows.size < candidates.size)) candidates = serialRows;
+        IntList matches = new IntList();
+        if (candidates != null) {
+            for (int i = 0; i < candidates.size; i++) {
+                int row = candidates.values[i];
+                if (matches(row, pkg, serial, q)) matches.add(row);
+            }
+            return rows(matches.values, matches.size);
+        }
+
+        NavigableMap<Long, IntList> buckets = byBucket;
+        if (q.fromMillis() != Long.MIN_VALUE) buckets = buckets.tailMap(Math.floorDiv(q.fromMillis(), BUCKET_MS), true);
+        if (q.toMillis() != Long.MAX_VALUE) buckets = buckets.headMap(Math.floorDiv(q.toMillis(), BUCKET_MS), true);
+        for (Map.Entry<Long, IntList> bucket : buckets.entrySet()) {
+            IntList rows = bucket.getValue();
+            for (int i = 0; i < rows.size; i++) {
+                if (matches(rows.values[i], pkg, serial, q)) matches.add(rows.values[i]);
+            }
+        }
+        // Buckets are in time order; rows only differ from that if the clock went back
+        Arrays.sort(matches.values, 0, matches.size);
+        return rows(matches.values, matches.size);
+    }
+
+    /** Drops the {@code count} oldest rows. */
+    void dropOldest(int count) {
+        if (count <= 0) return;
+        first = (int) Math.min(size, (long) first + count);
+        if (first >= INITIAL_ROWS && first >= size - first) compact();
+    }
+
+    void clear() {
+        first = 0;
+        times = new long[INITIAL_ROWS];
+        serials = new int[INITIAL_ROWS];
+        details = new int[INITIAL_ROWS];
+        status = new int[INITIAL_ROWS];
+        durations = new int[INITIAL_ROWS];
+        size = 0;
+        strings.clear();
+        actions.clear();
+        actionsOverflowed = false;
+        byDetails.clear();
+        bySerial.clear();
+        byBucket.clear();
+    }
+
+    private boolean matches(int row, int pkg, int serial, HistoryQuery q) {
+        return row >= first
+                && (pkg < 0 || details[row] == pkg)
+                && (serial < 0 || serials[row] == serial)
+                && times[row] >= q.fromMillis() && times[row] < q.toMillis();
+    }
+
+    private List<ActionHistory.Entry> rows(int[] rows, int count) {
+        // Rows below size are never rewritten; appends only grow into new arrays
+        long[] times = this.times;
+        int[] serials = this.serials;
+        int[] details = this.details;
+        int[] status = this.status;
+        int[] durations = this.durations;
+        String[] strings = this.strings.toArray();
+        String[] actions = this.actions.toArray();
+        return new AbstractList<>() {
+            @Override
+            public ActionHistory.Entry get(int index) {
+                if (index < 0 || index >= count) throw new IndexOutOfBoundsException(index);
+                int row = rows[index];
+                int s = status[row];
+                return new ActionHistory.Entry(times[row], strings[serials[row]], actions[s & 0xFFFF],
+                        strings[details[row]], s >> 16, durations[row]);
+            }
+
+            @Override
+            public int size() {
+                return count;
+            }
+        };
+    }
+
+    private static IntList postings(List<IntList> index, int code) {
+        while (index.size() <= code) index.add(null);
+        IntList rows = index.get(code);
+        if (rows == null) index.set(code, rows = new IntList());
+        return rows;
+    }
+
+    private static IntList find(List<IntList> index, int code) {
+        return code < index.size() ? index.get(code) : null;
+    }
+
+    /** Rebuilds the columns, dictionaries and indexes from the live rows only. */
+    private void compact() {
+        int[] live = new int[size - first];
+        for (int i = 0; i < live.length; i++) live[i] = first + i;
+        // Earlier query results keep the old arrays
+        List<ActionHistory.Entry> entries = rows(live, live.length);
+        clear();
+        for (ActionHistory.Entry e : entries) add(e);
+    }
+
+    private void grow() {
+        int rows = times.length * 2;
+        times = Arrays.copyOf(times, rows);
+        serials = Arrays.copyOf(serials, rows);
+        details = Arrays.copyOf(details, rows);
+        status = Arrays.copyOf(status, rows);
+        durations = Arrays.copyOf(durations, rows);
+    }
+
+    /** Growable int array. */
+    private static final class IntList {
+        int[] values = new int[4];
+        int size;
+
+        void add(int v) {
+            if (size == values.length) values = Arrays.copyOf(values, size * 2);
+            values[size++] = v;
+        }
+    }
+}
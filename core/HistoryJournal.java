@@ -0,0 +1,391 @@
+package core;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+
+/**
+ * Append-only on-disk journal of {@link ActionHistory} entries, so the record
+ * of what was done to which device survives a crash. Entries are JSON lines in
+ * numbered segments (history-000001.jsonl, ...); a segment is closed once it
+ * reaches the size limit and the oldest segments beyond the limit are deleted.
+ * {@link #append} only queues: a single writer thread writes whatever has
+ * queued up since its last commit and fsyncs once per batch (group commit).
+ * A line torn by a crash is skipped on replay. The journal counts the entries
+ * in each segment (from the replay, then as it writes) so that readers
+ * mirroring it can drop as many entries as pruning deletes.
+ */
+public class HistoryJournal implements AutoCloseable {
+    public static final String DIR = "history";
+    public static final long DEFAULT_SEGMENT_BYTES = 1024 * 1024;
+    public static final int DEFAULT_MAX_SEGMENTS = 8;
+    private static final String PREFIX = "history-";
+    private static final String SUFFIX = ".jsonl";
+
+    // Queue markers besides entries
+    private static final Object CLEAR = new Object();
+    private static final Object STOP = new Object();
+
+    private final Path dir;
+    private final long segmentBytes;
+    private final int maxSegments;
+    private final BlockingQueue<Object> queue = new LinkedBlockingQueue<>();
+    private final Thread writer;
+    // Segment number -> entries in it; pruned counts those deleted with their segments
+    private final Map<Long, Integer> entryCounts = new ConcurrentHashMap<>();
+    private final AtomicLong pruned = new AtomicLong();
+    private FileChannel channel;
+    private long segment;
+    private volatile boolean closed;
+
+    public HistoryJournal(Path dir) {
+        this(dir, DEFAULT_SEGMENT_BYTES, DEFAULT_MAX_SEGMENTS);
+    }
+
+    public HistoryJournal(Path dir, long segmentBytes, int maxSegments) {
+        this.dir = dir;
+        this.segmentBytes = Math.max(1, segmentBytes);
+        this.maxSegments = Math.max(1, maxSegments);
+        // Platform thread: fsync blocks in the kernel and would pin a virtual thread's carrier
+        this.writer = Thread.ofPlatform().daemon().name("history-journal").start(this::writeLoop);
+    }
+
+    /** Queues an entry; it is durable once the writer's next batch is committed. */
+    public void append(ActionHistory.Entry entry) {
+        if (!closed) queue.add(entry);
+    }
+
+    /** Deletes every segment, after anything queued before this call has been written. */
+    public void clear() {
+        if (!closed) queue.add(CLEAR);
+    }
+
+    /** Completes once everything queued so far is written and fsynced. */
+    public CompletableFuture<Void> flush() {
+        CompletableFuture<Void> done = new CompletableFuture<>();
+        if (closed) done.complete(null);
+        else queue.add(done);
+        return done;
+    }
+
+    /**
+     * Entries deleted so far by pruning old segments, oldest first. Only
+     * segments that were replayed or written by this journal are counted, so
+     * replay before appending.
+     */
+    public long prunedEntries() {
+        return pruned.get();
+    }
+
+    /** Reads every entry still on disk, oldest first. */
+    public List<ActionHistory.Entry> replay() {
+        List<ActionHistory.Entry> entries = new ArrayList<>();
+        replay(entries::add);
+        return entries;
+    }
+
+    /** Streams every entry still on disk to {@code onEntry}, oldest first; returns the count. */
+    public int replay(Consumer<ActionHistory.Entry> onEntry) {
+        int count = 0;
+        int skipped = 0;
+        for (Path file : segments()) {
+            int inFile = 0;
+            try (BufferedReader in = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+                String line;
+                while ((line = in.readLine()) != null) {
+                    if (line.isBlank()) continue;
+                    ActionHistory.Entry e = parse(line);
+                    if (e == null) {
+                        skipped++;
+                    } else {
+                        onEntry.accept(e);
+                        inFile++;
+                    }
+                }
+            } catch (IOException e) {
+                System.err.println("HistoryJournal: Could not read " + file + ": " + e.getMessage());
+            }
+            entryCounts.putIfAbsent(number(file), inFile);
+            count += inFile;
+        }
+        if (skipped > 0) System.err.println("HistoryJournal: Skipped " + skipped + " unreadable history lines");
+        System.out.println("HistoryJournal: Replayed " + count + " history entries from " + dir);
+        return count;
+    }
+
+    @Override
+    public void close() {
+        if (closed) return;
+        closed = true;
+        queue.add(STOP);
+        try {
+            writer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void writeLoop() {
+        List<Object> batch = new ArrayList<>();
+        try {
+            while (true) {
+                batch.add(queue.take());
+                queue.drainTo(batch);
+                boolean stop = commit(batch);
+                batch.clear();
+                if (stop) break;
+            }
+        } catch (InterruptedException e) {
+            // Shutting down
+        }
+        closeSegment();
+    }
+
+    /** Writes one batch with a single fsync; returns true if the batch asked to stop. */
+    private boolean commit(List<Object> batch) {
+        StringBuilder sb = new StringBuilder();
+        int entries = 0;
+        List<CompletableFuture<Void>> flushed = new ArrayList<>();
+        boolean stop = false;
+        for (Object item : batch) {
+            if (item instanceof ActionHistory.Entry e) {
+                format(e, sb);
+                entries++;
+            } else if (item == CLEAR) {
+                // Entries queued before the clear are dropped with it
+                sb.setLength(0);
+                entries = 0;
+                deleteSegments();
+            } else if (item == STOP) {
+                stop = true;
+            } else if (item instanceof CompletableFuture<?> f) {
+                @SuppressWarnings("unchecked")
+                CompletableFuture<Void> done = (CompletableFuture<Void>) f;
+                flushed.add(done);
+            }
+        }
+        if (!sb.isEmpty()) {
+            try {
+                write(sb, entries);
+            } catch (IOException e) {
+                System.err.println("HistoryJournal: Could not write history: " + e.getMessage());
+                closeSegment();
+            }
+        }
+        for (CompletableFuture<Void> f : flushed) f.complete(null);
+        return stop;
+    }
+
+    private void write(CharSequence lines, int entries) throws IOException {
+        if (channel == null) openSegment();
+        ByteBuffer bytes = StandardCharsets.UTF_8.encode(lines.toString());
+        while (bytes.hasRemaining()) channel.write(bytes);
+        channel.force(false);
+        entryCounts.merge(segment, entries, Integer::sum);
+        if (channel.size() >= segmentBytes) {
+            closeSegment();
+            segment++;
+        }
+    }
+
+    /** Continues the newest segment, or starts the first one. */
+    private void openSegment() throws IOException {
+        Files.createDirectories(dir);
+        if (segment == 0) {
+            List<Path> existing = segments();
+            segment = existing.isEmpty() ? 1 : number(existing.get(existing.size() - 1));
+        }
+        channel = FileChannel.open(segmentPath(segment), StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.READ);
+        long size = channel.size();
+        channel.position(size);
+        if (size > 0) {
+            // Terminate a line torn by a crash so the next entry starts cleanly
+            ByteBuffer last = ByteBuffer.allocate(1);
+            channel.read(last, size - 1);
+            if (last.get(0) != '\n') channel.write(ByteBuffer.wrap(new byte[]{'\n'}));
+        }
+        prune();
+    }
+
+    private void closeSegment() {
+        if (channel == null) return;
+        try {
+            channel.close();
+        } catch (IOException ignored) {
+        }
+        channel = null;
+    }
+
+    private void prune() {
+        List<Path> existing = segments();
+        for (int i = 0; i < existing.size() - maxSegments; i++) {
+            try {
+                Files.deleteIfExists(existing.get(i));
+                Integer entries = entryCounts.remove(number(existing.get(i)));
+                if (entries != null) pruned.addAndGet(entries);
+            } catch (IOException e) {
+                System.err.println("HistoryJournal: Could not delete " + existing.get(i) + ": " + e.getMessage());
+            }
+        }
+    }
+
+    private void deleteSegments() {
+        closeSegment();
+        for (Path file : segments()) {
+            try {
+                Files.deleteIfExists(file);
+            } catch (IOException e) {
+                System.err.println("HistoryJournal: Could not delete " + file + ": " + e.getMessage());
+            }
+        }
+        entryCounts.clear();
+        segment = 1;
+    }
+
+    /** Segment files, oldest first. */
+    private List<Path> segments() {
+        if (!Files.isDirectory(dir)) return List.of();
+        try (Stream<Path> files = Files.list(dir)) {
+            return files.filter(p -> number(p) > 0)
+                    .sorted((a, b) -> Long.compare(number(a), number(b)))
+                    .toList();
+        } catch (IOException e) {
+            System.err.println("HistoryJournal: Could not list " + dir + ": " + e.getMessage());
+            return List.of();
+        }
+    }
+
+    private Path segmentPath(long n) {
+        return dir.resolve(String.format("%s%06d%s", PREFIX, n, SUFFIX));
+    }
+
+    /** Segment number of a journal file name, or -1. */
+    private static long number(Path file) {
+        String name = file.getFileName().toString();
+        if (!name.startsWith(PREFIX) || !name.endsWith(SUFFIX)) return -1;
+        try {
+            return Long.parseLong(name.substring(PREFIX.length(), name.length() - SUFFIX.length()));
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    // {"time":<epoch ms>,"serial":"...","action":"...","details":"...","exit":<code>,"ms":<duration>}
+    static void format(ActionHistory.Entry e, StringBuilder sb) {
+        sb.append("{\"time\":").append(e.getTimeMillis());
+        sb.append(",\"serial\":");
+        quote(e.getSerial(), sb);
+        sb.append(",\"action\":");
+        quote(e.getAction(), sb);
+        sb.append(",\"details\":");
+        quote(e.getDetails(), sb);
+        sb.append(",\"exit\":").append(e.getExitCode());
+        sb.append(",\"ms\":").append(e.getDurationMs());
+        sb.append("}\n");
+    }
+
+    private static void quote(String s, StringBuilder sb) {
+        sb.append('"');
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            switch (c) {
+                case '"' -> sb.append("\\\"");
+                case '\\' -> sb.append("\\\\");
+                case '\n' -> sb.append("\\n");
+                case '\r' -> sb.append("\\r");
+                case '\t' -> sb.append("\\t");
+                default -> {
+                    if (c < 0x20) sb.append(String.format("\\u%04x", (int) c));
+                    else sb.append(c);
+                }
+            }
+        }
+        sb.append('"');
+    }
+
+    /** Parses one journal line, or returns null if it is torn or malformed. */
+    static ActionHistory.Entry parse(String line) {
+        Map<String, String> fields = new HashMap<>();
+        int i = skip(line, 0);
+        if (i >= line.length() || line.charAt(i) != '{') return null;
+        i = skip(line, i + 1);
+        StringBuilder sb = new StringBuilder();
+        while (i < line.length() && line.charAt(i) != '}') {
+            if (line.charAt(i) != '"' || (i = readString(line, i + 1, sb)) < 0) return null;
+            String key = sb.toString();
+            i = skip(line, i);
+            if (i >= line.length() || line.charAt(i) != ':') return null;
+            i = skip(line, i + 1);
+            if (i < line.length() && line.charAt(i) == '"') {
+                if ((i = readString(line, i + 1, sb)) < 0) return null;
+            } else {
+                int start = i;
+                while (i < line.length() && line.charAt(i) != ',' && line.charAt(i) != '}') i++;
+                sb.setLength(0);
+                sb.append(line, start, i);
+            }
+            fields.put(key, sb.toString().trim());
+            i = skip(line, i);
+            if (i < line.length() && line.charAt(i) == ',') i = skip(line, i + 1);
+        }
+        if (i >= line.length()) return null;
+        try {
+            return new ActionHistory.Entry(Long.parseLong(fields.get("time")), fields.getOrDefault("serial", ""), fields.getOrDefault("action", ""),
+                    fields.getOrDefault("details", ""), Integer.parseInt(fields.get("exit")), Long.parseLong(fields.getOrDefault("ms", "0")));
+        } catch (RuntimeException e) {
+            return null;
+        }
+    }
+
+    /** Decodes the rest of a string into {@code sb}; returns the index after the closing quote, or -1. */
+    private static int readString(String s, int i, StringBuilder sb) {
+        sb.setLength(0);
+        while (i < s.length()) {
+            char c = s.charAt(i++);
+            if (c == '"') return i;
+            if (c != '\\') {
+                sb.append(c);
+                continue;
+            }
+            if (i >= s.length()) return -1;
+            char esc = s.charAt(i++);
+            switch (esc) {
+                case 'n' -> sb.append('\n');
+                case 'r' -> sb.append('\r');
+                case 't' -> sb.append('\t');
+                case 'u' -> {
+                    if (i + 4 > s.length()) return -1;
+                    try {
+                        sb.append((char) Integer.parseInt(s.substring(i, i + 4), 16));
+                    } catch (NumberFormatException e) {
+                        return -1;
+                    }
+                    i += 4;
+                }
+                default -> sb.append(esc);
+            }
+        }
+        return -1;
+    }
+
+    private static int skip(String s, int i) {
+        while (i < s.length() && Character.isWhitespace(s.charAt(i))) i++;
+        return i;
+    }
+}
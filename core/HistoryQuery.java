@@ -0,0 +1,24 @@
+package core;
+
+/**
+ * Filter for {@link ActionHistory#query}: an exact package (the entry's
+ * details), an exact device serial and a [from, to) time range in epoch
+ * millis. Null or blank fields match anything.
+ */
+public record HistoryQuery(String pkg, String serial, long fromMillis, long toMillis) {
+    public static final HistoryQuery ANY = new HistoryQuery(null, null, Long.MIN_VALUE, Long.MAX_VALUE);
+
+    public HistoryQuery {
+        pkg = pkg == null || pkg.isBlank() ? null : pkg.trim();
+        serial = serial == null || serial.isBlank() ? null : serial.trim();
+    }
+
+    /** Entries for a package on a device (either may be null) since {@code fromMillis}. */
+    public static HistoryQuery of(String pkg, String serial, long fromMillis) {
+        return new HistoryQuery(pkg, serial, fromMillis, Long.MAX_VALUE);
+    }
+
+    public boolean isAny() {
+        return pkg == null && serial == null && fromMillis == Long.MIN_VALUE && toMillis == Long.MAX_VALUE;
+    }
+}
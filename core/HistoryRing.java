@@ -0,0 +1,135 @@
+package core;
+
+import java.util.Arrays;
+
+/**
+ * Fixed-capacity columnar ring buffer behind {@link ActionHistory}. Each entry
+ * is one slot across parallel primitive arrays (24 bytes) instead of an object
+ * graph: epoch millis, dictionary codes for serial and details, the action
+ * code and exit code packed into one int, and the duration. Once full, the
+ * oldest entry is overwritten. Entries are materialized only when read.
+ * Overwritten entries leave their strings in the dictionaries, so once those
+ * hold several times more strings than the ring can reference, the live slots
+ * are re-encoded into fresh ones.
+ * Not thread-safe; ActionHistory uses it from the FX thread.
+ */
+final class HistoryRing {
+    private static final int INITIAL_SLOTS = 1024;
+    // Action codes share an int with the exit code, so there can be at most this many
+    private static final int MAX_ACTIONS = 0xFFFF;
+    // Dictionary strings per slot before a compaction; a live slot references at most two
+    private static final int COMPACT_STRINGS_PER_SLOT = 4;
+
+    private final int capacity;
+    private long[] times;
+    private int[] serials;
+    private int[] details;
+    private int[] status; // action code (low 16 bits) | exit code as a short (high 16 bits)
+    private int[] durations;
+    private int start;
+    private int size;
+
+    // Serials and package names repeat across entries; each distinct string is stored once
+    private StringDictionary strings = new StringDictionary();
+    private StringDictionary actions = new StringDictionary();
+    private boolean actionsOverflowed;
+
+    HistoryRing(int capacity) {
+        this.capacity = Math.max(1, capacity);
+        allocate(Math.min(this.capacity, INITIAL_SLOTS));
+    }
+
+    int capacity() {
+        return capacity;
+    }
+
+    int size() {
+        return size;
+    }
+
+    /** Appends an entry; returns true if the oldest entry was overwritten to make room. */
+    boolean add(ActionHistory.Entry e) {
+        boolean evicted = size == capacity;
+        if (!evicted && size == times.length) grow();
+        int slot = evicted ? start : physical(size);
+        times[slot] = e.getTimeMillis();
+        serials[slot] = strings.code(e.getSerial());
+        details[slot] = strings.code(e.getDetails());
+        int action = actionCode(e.getAction());
+        int exit = Math.max(Short.MIN_VALUE, Math.min(Short.MAX_VALUE, e.getExitCode()));
+        status[slot] = (exit << 16) | action;
+        durations[slot] = (int) Math.min(Integer.MAX_VALUE, Math.max(0, e.getDurationMs()));
+        if (evicted) start = physical(1);
+        else size++;
+        if (evicted && strings.size() > (long) COMPACT_STRINGS_PER_SLOT * capacity + INITIAL_SLOTS) compact();
+        return evicted;
+    }
+
+    private int actionCode(String action) {
+        int code = actions.find(action);
+        if (code >= 0) return code;
+        // Once a compaction didn't free a code, wait for the next one rather than retrying per entry
+        if (actions.size() >= MAX_ACTIONS && size == capacity && !actionsOverflowed) compact();
+        if (actions.size() < MAX_ACTIONS) return actions.code(action);
+        if (!actionsOverflowed) {
+            actionsOverflowed = true;
+            System.err.println("HistoryRing: More than " + MAX_ACTIONS + " distinct actions; new ones are logged without an action");
+        }
+        return 0;
+    }
+
+    ActionHistory.Entry get(int index) {
+        if (index < 0 || index >= size) throw new IndexOutOfBoundsException(index);
+        int slot = physical(index);
+        int s = status[slot];
+        return new ActionHistory.Entry(times[slot], strings.get(serials[slot]), actions.get(s & 0xFFFF),
+                strings.get(details[slot]), s >> 16, durations[slot]);
+    }
+
+    void clear() {
+        start = 0;
+        size = 0;
+        strings.clear();
+        actions.clear();
+        actionsOverflowed = false;
+        allocate(Math.min(capacity, INITIAL_SLOTS));
+    }
+
+    /** Re-encodes the live slots into dictionaries holding only the strings they use. */
+    private void compact() {
+        StringDictionary liveStrings = new StringDictionary();
+        StringDictionary liveActions = new StringDictionary();
+        for (int i = 0; i < size; i++) {
+            int slot = physical(i);
+            serials[slot] = liveStrings.code(strings.get(serials[slot]));
+            details[slot] = liveStrings.code(strings.get(details[slot]));
+            int s = status[slot];
+            status[slot] = (s & 0xFFFF0000) | liveActions.code(actions.get(s & 0xFFFF));
+        }
+        strings = liveStrings;
+        actions = liveActions;
+    }
+
+    private int physical(int index) {
+        int slot = start + index;
+        return slot >= capacity ? slot - capacity : slot;
+    }
+
+    private void allocate(int slots) {
+        times = new long[slots];
+        serials = new int[slots];
+        details = new int[slots];
+        status = new int[slots];
+        durations = new int[slots];
+    }
+
+    /** Doubles the columns up to capacity; only happens before the ring first wraps, so start is 0. */
+    private void grow() {
+        int slots = (int) Math.min(capacity, times.length * 2L);
+        times = Arrays.copyOf(times, slots);
+        serials = Arrays.copyOf(serials, slots);
+        details = Arrays.copyOf(details, slots);
+        status = Arrays.copyOf(status, slots);
+        durations = Arrays.copyOf(durations, slots);
+    }
+}
@@ -0,0 +1,60 @@
+package core;
+
+import jdk.jfr.Configuration;
+import jdk.jfr.Recording;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.text.ParseException;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+
+/**
+ * Records a JDK Flight Recorder file for the whole app session, with the
+ * default JDK settings plus all of this app's events (adb commands, scans,
+ * pack loads, apply batches). The file is written when the recorder is closed.
+ */
+public class JfrRecorder implements AutoCloseable {
+    private final Recording recording;
+    private final Path file;
+
+    private JfrRecorder(Recording recording, Path file) {
+        this.recording = recording;
+        this.file = file;
+    }
+
+    public static JfrRecorder start(Path dir) throws IOException {
+        Files.createDirectories(dir);
+        String timestamp = LocalDateTime.now().format(DateTimeFormatter.ofPattern("yyyyMMdd-HHmmss"));
+        Path file = dir.resolve("uadb-" + timestamp + ".jfr");
+        Recording recording;
+        try {
+            recording = new Recording(Configuration.getConfiguration("default"));
+        } catch (ParseException e) {
+            throw new IOException("Invalid JFR configuration: " + e.getMessage(), e);
+        }
+        recording.setName("uadb-session");
+        recording.enable(AdbCommandEvent.class);
+        recording.enable(PackageScanEvent.class);
+        recording.enable(OemPackLoadEvent.class);
+        recording.enable(ApplyBatchEvent.class);
+        recording.setToDisk(true);
+        recording.setDestination(file);
+        recording.start();
+        System.out.println("JfrRecorder: Recording to " + file);
+        return new JfrRecorder(recording, file);
+    }
+
+    public Path getFile() {
+        return file;
+    }
+
+    @Override
+    public void close() {
+        // Stopping writes the recording to its destination
+        recording.stop();
+        recording.close();
+        System.out.println("JfrRecorder: Saved " + file);
+    }
+}
@@ -0,0 +1,242 @@
+package core;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Resolves real application labels (and icon resource paths) and keeps them
+ * in an on-disk cache keyed by package + versionCode, so a build that was seen
+ * once, on any device, never needs a device call again.
+ * Stock Android has no shell command that prints app labels, so misses are
+ * resolved in one on-device batch with `aapt2`/`aapt dump badging` when such
+ * a binary is on the device (PATH or /data/local/tmp), which is probed for once
+ * per device before any batch is built. Without it, callers
+ * keep the scanner's heuristic label. Builds that badging gave no label for
+ * (stubs, overlays) are cached with the heuristic label so they aren't retried.
+ */
+public class LabelResolver {
+    public static final String CACHE_FILE = "labels.tsv";
+    // Keeps each batch script under old adbd's service string limit
+    private static final int MAX_BATCH_CHARS = 16 * 1024;
+    private static final String LABEL_MARKER = "::uadb-label ";
+    private static final String FIND_AAPT =
+            "command -v aapt2 || command -v aapt || ls /data/local/tmp/aapt2 /data/local/tmp/aapt 2>/dev/null | head -n 1";
+
+    public record Metadata(String label, String icon) {}
+
+    private final AdbRunner adbRunner;
+    private final Path cacheFile;
+    private final Map<String, Metadata> cache = new ConcurrentHashMap<>();
+    // aapt binary per device, "" for devices without one; probed once per session
+    private final Map<String, String> aapt = new ConcurrentHashMap<>();
+
+    public LabelResolver(AdbRunner adbRunner, Path cacheFile) {
+        this.adbRunner = adbRunner;
+        this.cacheFile = cacheFile;
+        load();
+    }
+
+    /** Cached metadata for this build of a package, or null (also when versionCode is unknown). */
+    public Metadata cached(String pkg, long versionCode) {
+        return versionCode > 0 ? cache.get(key(pkg, versionCode)) : null;
+    }
+
+    public int size() {
+        return cache.size();
+    }
+
+    /**
+     * Resolves every package not already cached, in as few shell commands as
+     * the command length allows (usually one), and persists the new entries.
+     * Packages without a versionCode can't be keyed and are skipped; packages a
+     * completed batch found no label for are cached with their heuristic label.
+     * Returns pkg -> metadata for the newly resolved packages only.
+     */
+    public Map<String, Metadata> resolve(String serial, Collection<PackageInfo> packages) {
+        Map<String, PackageInfo> missing = new HashMap<>();
+        for (PackageInfo p : packages) {
+            if (p.versionCode() > 0 && !cache.containsKey(key(p.pkg(), p.versionCode()))) {
+                missing.put(p.pkg(), p);
+            }
+        }
+        Map<String, Metadata> resolved = new HashMap<>();
+        if (missing.isEmpty()) return resolved;
+        String binary = aapt(serial);
+        if (binary == null || binary.isEmpty()) return resolved;
+
+        List<String> completed = new ArrayList<>();
+        for (List<String> batch : batches(binary, missing.keySet())) {
+            CommandResult res = adbRunner.stream(new BadgingParser(resolved)::accept, "-s", serial, "shell", batchScript(binary, batch));
+            if (!res.isSuccess()) {
+                System.err.println("LabelResolver: Label batch failed on " + serial + " (exit code " + res.exitCode() + ")");
+                break;
+            }
+            completed.addAll(batch);
+        }
+        for (String pkg : completed) {
+            PackageInfo p = missing.get(pkg);
+            Metadata meta = resolved.get(pkg);
+            cache.put(key(pkg, p.versionCode()), meta != null ? meta : new Metadata(p.label(), ""));
+        }
+        if (!completed.isEmpty()) save();
+        System.out.println("LabelResolver: Resolved " + resolved.size() + "/" + missing.size() + " labels on " + serial);
+        return resolved;
+    }
+
+    public CompletableFuture<Map<String, Metadata>> resolveAsync(String serial, Collection<PackageInfo> packages) {
+        return adbRunner.getScheduler().submit(serial, () -> resolve(serial, packages));
+    }
+
+    /** The device's aapt binary, "" if it has none, or null if the probe itself failed (retried next time). */
+    private String aapt(String serial) {
+        String binary = aapt.get(serial);
+        if (binary != null) return binary;
+        CommandResult res = adbRunner.run("-s", serial, "shell", FIND_AAPT);
+        if (!res.isSuccess()) {
+            System.err.println("LabelResolver: Could not look for aapt on " + serial + " (exit code " + res.exitCode() + ")");
+            return null;
+        }
+        binary = res.stdout().strip();
+        aapt.put(serial, binary);
+        if (binary.isEmpty()) System.out.println("LabelResolver: No aapt on " + serial + ", keeping heuristic labels");
+        return binary;
+    }
+
+    /** Splits packages so that each batch's whole script stays under MAX_BATCH_CHARS. */
+    private static List<List<String>> batches(String aapt, Collection<String> pkgs) {
+        // The script is a fixed part plus each name and a separating space
+        int base = batchScript(aapt, List.of()).length();
+        List<List<String>> batches = new ArrayList<>();
+        List<String> current = new ArrayList<>();
+        int chars = base;
+        for (String pkg : pkgs) {
+            if (chars + pkg.length() + 1 > MAX_BATCH_CHARS && !current.isEmpty()) {
+                batches.add(current);
+                current = new ArrayList<>();
+                chars = base;
+            }
+            current.add(pkg);
+            chars += pkg.length() + 1;
+        }
+        if (!current.isEmpty()) batches.add(current);
+        return batches;
+    }
+
+    /**
+     * One pm list pass to find APK paths, then badging for the wanted packages.
+     * Uses no double quotes so the script survives Windows argument quoting;
+     * ends with `true` so a package without a label doesn't fail the batch.
+     */
+    static String batchScript(String aapt, List<String> pkgs) {
+        return "A=" + aapt + "\n"
+                + "W=' " + String.join(" ", pkgs) + " '\n"
+                + "pm list packages -f -u --user 0 | while IFS= read -r l; do l=${l#package:}; p=${l##*=}; "
+                + "case $W in *\\ $p\\ *) echo '" + LABEL_MARKER + "'$p; "
+                + "$A dump badging ${l%=*} 2>/dev/null | grep -E '^application(-label)?:';; esac; done; true";
+    }
+
+    /** Parses marker-separated badging output into pkg -> metadata. */
+    private static class BadgingParser {
+        private final Map<String, Metadata> out;
+        private String pkg;
+        private String label;
+        private String icon;
+
+        BadgingParser(Map<String, Metadata> out) {
+            this.out = out;
+        }
+
+        void accept(String line) {
+            if (line.startsWith(LABEL_MARKER)) {
+                pkg = line.substring(LABEL_MARKER.length()).trim();
+                label = null;
+                icon = null;
+            } else if (pkg != null && line.startsWith("application-label:")) {
+                label = quoted(line, line.indexOf('\''));
+                store();
+            } else if (pkg != null && line.startsWith("application:")) {
+                int l = line.indexOf("label='");
+                int i = line.indexOf("icon='");
+                if (label == null && l >= 0) label = quoted(line, l + 6);
+                if (i >= 0) icon = quoted(line, i + 5);
+                store();
+            }
+        }
+
+        private void store() {
+            if (label != null && !label.isBlank()) out.put(pkg, new Metadata(label, icon == null ? "" : icon));
+        }
+    }
+
+    /** Value between the quote at {@code open} and the next unescaped quote. */
+    private static String quoted(String line, int open) {
+        if (open < 0) return null;
+        StringBuilder sb = new StringBuilder();
+        for (int i = open + 1; i < line.length(); i++) {
+            char c = line.charAt(i);
+            if (c == '\\' && i + 1 < line.length()) {
+                sb.append(line.charAt(++i));
+            } else if (c == '\'') {
+                break;
+            } else {
+                sb.append(c);
+            }
+        }
+        return sb.toString();
+    }
+
+    private static String key(String pkg, long versionCode) {
+        return pkg + '@' + versionCode;
+    }
+
+    private void load() {
+        if (!Files.exists(cacheFile)) return;
+        try {
+            // pkg \t versionCode \t label \t icon
+            for (String line : Files.readAllLines(cacheFile, StandardCharsets.UTF_8)) {
+                String[] f = line.split("\t", -1);
+                if (f.length < 3) continue;
+                try {
+                    cache.put(key(f[0], Long.parseLong(f[1])), new Metadata(f[2], f.length > 3 ? f[3] : ""));
+                } catch (NumberFormatException ignored) {
+                }
+            }
+            System.out.println("LabelResolver: Loaded " + cache.size() + " cached labels");
+        } catch (IOException e) {
+            System.err.println("LabelResolver: Could not read " + cacheFile + ": " + e.getMessage());
+        }
+    }
+
+    private synchronized void save() {
+        try {
+            Files.createDirectories(cacheFile.getParent());
+            Path tmp = cacheFile.resolveSibling(cacheFile.getFileName() + ".tmp");
+            try (BufferedWriter w = Files.newBufferedWriter(tmp, StandardCharsets.UTF_8)) {
+                for (Map.Entry<String, Metadata> e : cache.entrySet()) {
+                    int at = e.getKey().lastIndexOf('@');
+                    w.write(e.getKey().substring(0, at) + '\t' + e.getKey().substring(at + 1) + '\t'
+                            + clean(e.getValue().label()) + '\t' + clean(e.getValue().icon()));
+                    w.newLine();
+                }
+            }
+            Files.move(tmp, cacheFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            System.err.println("LabelResolver: Could not write " + cacheFile + ": " + e.getMessage());
+        }
+    }
+
+    private static String clean(String s) {
+        return s.replace('\t', ' ').replace('\n', ' ').replace('\r', ' ');
+    }
+}
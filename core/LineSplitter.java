@@ -0,0 +1,46 @@
+package core;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.function.Consumer;
+
+/**
+ * Turns a stream of UTF-8 byte chunks into lines. Only the current partial line
+ * is buffered, so memory stays bounded by the longest line, not the output size.
+ * Splitting on the '\n' byte is safe because it never occurs inside a multi-byte
+ * UTF-8 sequence.
+ */
+final class LineSplitter {
+    private final Consumer<String> onLine;
+    private byte[] buf = new byte[256];
+    private int len;
+
+    LineSplitter(Consumer<String> onLine) {
+        this.onLine = onLine;
+    }
+
+    void write(ByteBuffer data) {
+        while (data.hasRemaining()) {
+            byte b = data.get();
+            if (b == '\n') {
+                emit();
+            } else {
+                if (len == buf.length) buf = Arrays.copyOf(buf, len * 2);
+                buf[len++] = b;
+            }
+        }
+    }
+
+    /** Emits a trailing line that had no terminating newline. */
+    void finish() {
+        if (len > 0) emit();
+    }
+
+    private void emit() {
+        int end = len;
+        if (end > 0 && buf[end - 1] == '\r') end--;
+        onLine.accept(new String(buf, 0, end, StandardCharsets.UTF_8));
+        len = 0;
+    }
+}
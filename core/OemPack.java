@@ -0,0 +1,67 @@
+package core;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Recommendations of one OEM pack: pkg -> Recommendation. Keys may be
+ * namespace patterns (`com.miui.analytics.*`); an exact entry beats any
+ * pattern, and among patterns the most specific wins.
+ */
+public interface OemPack {
+    OemPack EMPTY = of(Map.of());
+
+    /** Returns the recommendation for a package, or null if no entry or pattern covers it. */
+    Recommendation get(String pkg);
+
+    int size();
+
+    /** Like {@link #get}, but returns the shared {@link Recommendation#EMPTY} instead of null. */
+    default Recommendation getOrEmpty(String pkg) {
+        Recommendation rec = get(pkg);
+        return rec != null ? rec : Recommendation.EMPTY;
+    }
+
+    static OemPack of(Map<String, Recommendation> entries) {
+        PackageTrie<Recommendation> rules = new PackageTrie<>();
+        for (Map.Entry<String, Recommendation> e : entries.entrySet()) {
+            if (PackageTrie.isPattern(e.getKey())) rules.put(e.getKey(), e.getValue());
+        }
+        return new OemPack() {
+            @Override
+            public Recommendation get(String pkg) {
+                Recommendation rec = entries.get(pkg);
+                return rec != null || rules.isEmpty() ? rec : rules.match(pkg);
+            }
+
+            @Override
+            public int size() {
+                return entries.size();
+            }
+        };
+    }
+
+    /** Consults {@code packs} in order; the first one with an entry or matching pattern wins. */
+    static OemPack layered(List<OemPack> packs) {
+        if (packs.isEmpty()) return EMPTY;
+        if (packs.size() == 1) return packs.get(0);
+        List<OemPack> layers = List.copyOf(packs);
+        return new OemPack() {
+            @Override
+            public Recommendation get(String pkg) {
+                for (OemPack pack : layers) {
+                    Recommendation rec = pack.get(pkg);
+                    if (rec != null) return rec;
+                }
+                return null;
+            }
+
+            @Override
+            public int size() {
+                int n = 0;
+                for (OemPack pack : layers) n += pack.size();
+                return n;
+            }
+        };
+    }
+}
@@ -0,0 +1,79 @@
+package core;
+
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Index of the packs directory: normalized manufacturer -> newest pack file.
+ * Pack files are `<manufacturer>[-YYYYMMDD].json`; a dated file beats an
+ * older or undated one. The directory is listed once and again only after
+ * its mtime changes (files added, removed or renamed) or {@link #invalidate()}.
+ */
+final class OemPackDirectory {
+    private static final Pattern PACK_NAME = Pattern.compile("([a-z0-9-]+?)(?:-(\\d{8}))?\\.json");
+
+    private record Snapshot(long dirMtime, Map<String, String> latest) {}
+
+    private final Path dir;
+    private volatile Snapshot snapshot;
+
+    OemPackDirectory(Path dir) {
+        this.dir = dir;
+    }
+
+    /** File name of the newest pack for a normalized manufacturer, or null if there is none. */
+    String latest(String manufacturer) {
+        return current().latest().get(manufacturer);
+    }
+
+    void invalidate() {
+        snapshot = null;
+    }
+
+    private Snapshot current() {
+        long mtime = mtime();
+        Snapshot s = snapshot;
+        if (s != null && s.dirMtime() == mtime) return s;
+        s = new Snapshot(mtime, scan());
+        snapshot = s;
+        return s;
+    }
+
+    private Map<String, String> scan() {
+        Map<String, String> latest = new HashMap<>();
+        Map<String, Long> versions = new HashMap<>();
+        if (!Files.isDirectory(dir)) return latest;
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(dir, "*.json")) {
+            for (Path file : files) {
+                String name = file.getFileName().toString();
+                Matcher m = PACK_NAME.matcher(name.toLowerCase(Locale.ROOT));
+                if (!m.matches()) continue;
+                long version = m.group(2) == null ? 0 : Long.parseLong(m.group(2));
+                Long best = versions.get(m.group(1));
+                if (best == null || version > best) {
+                    versions.put(m.group(1), version);
+                    latest.put(m.group(1), name);
+                }
+            }
+        } catch (IOException e) {
+            System.err.println("OemPackDirectory: Cannot list " + dir + ": " + e.getMessage());
+        }
+        System.out.println("OemPackDirectory: Indexed " + latest.size() + " manufacturers in " + dir);
+        return latest;
+    }
+
+    private long mtime() {
+        try {
+            return Files.getLastModifiedTime(dir).toMillis();
+        } catch (IOException e) {
+            return -1;
+        }
+    }
+}
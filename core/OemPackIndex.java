@@ -0,0 +1,220 @@
+package core;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+/**
+ * Compiled binary form of an OEM pack, stored next to the JSON as
+ * `<pack>.json.idx` and memory-mapped. Lookups binary-search the mapped
+ * records and compare UTF-8 bytes in place; only a hit decodes its strings.
+ * Namespace patterns (`a.b.*`) are loaded into a PackageTrie when opened and
+ * consulted when there is no exact entry.
+ *
+ * Layout (big-endian):
+ *   header:  magic, version, JSON size, JSON mtime, JSON CRC32, count
+ *   records: count x [pkg, action, risk, reason] string offsets, sorted by pkg bytes
+ *   strings: [int length][UTF-8 bytes], deduplicated
+ */
+public final class OemPackIndex implements OemPack {
+    public static final String SUFFIX = ".idx";
+    private static final int MAGIC = 0x55414458; // "UADX"
+    private static final int VERSION = 1;
+    private static final int HEADER_BYTES = 4 + 4 + 8 + 8 + 8 + 4;
+    private static final int RECORD_BYTES = 16;
+
+    private final ByteBuffer buf;
+    private final int count;
+    // Pattern entries (`a.b.*`), the only entries kept on the heap
+    private final PackageTrie<Recommendation> rules = new PackageTrie<>();
+
+    private OemPackIndex(ByteBuffer buf) throws IOException {
+        this.buf = buf;
+        if (buf.limit() < HEADER_BYTES || buf.getInt(0) != MAGIC || buf.getInt(4) != VERSION) {
+            throw new IOException("not an OEM pack index");
+        }
+        this.count = buf.getInt(32);
+        if (count < 0 || HEADER_BYTES + (long) count * RECORD_BYTES > buf.limit()) {
+            throw new IOException("truncated OEM pack index");
+        }
+        // Check every string reference once so lookups can't run off the buffer
+        int stringsStart = HEADER_BYTES + count * RECORD_BYTES;
+        for (int p = HEADER_BYTES; p < stringsStart; p += 4) {
+            int off = buf.getInt(p);
+            if (off < stringsStart || off > buf.limit() - 4 || buf.getInt(off) < 0 || off + 4L + buf.getInt(off) > buf.limit()) {
+                throw new IOException("corrupt OEM pack index");
+            }
+        }
+        for (int i = 0; i < count; i++) {
+            int rec = HEADER_BYTES + i * RECORD_BYTES;
+            if (endsWithWildcard(buf.getInt(rec))) {
+                rules.put(string(buf.getInt(rec)), recommendation(rec));
+            }
+        }
+    }
+
+    private boolean endsWithWildcard(int off) {
+        int len = buf.getInt(off);
+        return len > 2 && buf.get(off + 4 + len - 2) == '.' && buf.get(off + 4 + len - 1) == '*';
+    }
+
+    /**
+     * Opens the index for a JSON pack, compiling it first if it is missing,
+     * unreadable or out of date. An index whose size/mtime don't match is
+     * still used if the JSON's CRC32 is unchanged (e.g. the file was touched
+     * or copied). If the index can't be written, the compiled form is kept in
+     * memory instead.
+     */
+    public static OemPackIndex open(Path json) throws IOException {
+        Path idx = indexPath(json);
+        long size = Files.size(json);
+        long mtime = Files.getLastModifiedTime(json).toMillis();
+        if (Files.exists(idx)) {
+            try {
+                OemPackIndex index = new OemPackIndex(map(idx));
+                if (index.sourceSize() == size && index.sourceMtime() == mtime) return index;
+                if (index.sourceCrc() == crc(Files.readAllBytes(json))) return index;
+                System.out.println("OemPackIndex: " + json.getFileName() + " changed, recompiling");
+            } catch (IOException e) {
+                System.err.println("OemPackIndex: Ignoring " + idx.getFileName() + ": " + e.getMessage());
+            }
+        }
+        byte[] data = compile(json, size, mtime);
+        try {
+            Path tmp = idx.resolveSibling(idx.getFileName() + ".tmp");
+            Files.write(tmp, data);
+            Files.move(tmp, idx, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            return new OemPackIndex(map(idx));
+        } catch (IOException e) {
+            System.err.println("OemPackIndex: Could not write " + idx + " (" + e.getMessage() + "), using it from memory");
+            return new OemPackIndex(ByteBuffer.wrap(data));
+        }
+    }
+
+    public static Path indexPath(Path json) {
+        return json.resolveSibling(json.getFileName() + SUFFIX);
+    }
+
+    /** Compiles a JSON pack into index bytes; later duplicate entries win, as in the JSON loader. */
+    public static byte[] compile(Path json, long size, long mtime) throws IOException {
+        byte[] source = Files.readAllBytes(json);
+        Map<String, Recommendation> entries;
+        try (Reader in = new InputStreamReader(new ByteArrayInputStream(source), StandardCharsets.UTF_8)) {
+            entries = OemPackReader.read(in);
+        }
+        byte[][] keys = new byte[entries.size()][];
+        String[] names = new String[entries.size()];
+        int n = 0;
+        for (String pkg : entries.keySet()) names[n++] = pkg;
+        Integer[] order = new Integer[n];
+        for (int i = 0; i < n; i++) {
+            keys[i] = names[i].getBytes(StandardCharsets.UTF_8);
+            order[i] = i;
+        }
+        Arrays.sort(order, (a, b) -> Arrays.compareUnsigned(keys[a], keys[b]));
+
+        ByteArrayOutputStream strings = new ByteArrayOutputStream();
+        Map<String, Integer> offsets = new HashMap<>();
+        int stringsStart = HEADER_BYTES + n * RECORD_BYTES;
+        ByteBuffer records = ByteBuffer.allocate(n * RECORD_BYTES);
+        for (int i : order) {
+            Recommendation rec = entries.get(names[i]);
+            records.putInt(stringsStart + intern(strings, offsets, names[i]));
+            records.putInt(stringsStart + intern(strings, offsets, rec.action().label()));
+            records.putInt(stringsStart + intern(strings, offsets, rec.risk().label()));
+            records.putInt(stringsStart + intern(strings, offsets, rec.reason()));
+        }
+
+        ByteBuffer out = ByteBuffer.allocate(stringsStart + strings.size());
+        out.putInt(MAGIC).putInt(VERSION).putLong(size).putLong(mtime).putLong(crc(source)).putInt(n);
+        out.put(records.array());
+        out.put(strings.toByteArray());
+        return out.array();
+    }
+
+    private static int intern(ByteArrayOutputStream strings, Map<String, Integer> offsets, String s) {
+        Integer off = offsets.get(s);
+        if (off != null) return off;
+        int at = strings.size();
+        byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+        strings.write(bytes.length >>> 24);
+        strings.write(bytes.length >>> 16);
+        strings.write(bytes.length >>> 8);
+        strings.write(bytes.length);
+        strings.writeBytes(bytes);
+        offsets.put(s, at);
+        return at;
+    }
+
+    @Override
+    public Recommendation get(String pkg) {
+        byte[] key = pkg.getBytes(StandardCharsets.UTF_8);
+        int lo = 0;
+        int hi = count - 1;
+        while (lo <= hi) {
+            int mid = (lo + hi) >>> 1;
+            int rec = HEADER_BYTES + mid * RECORD_BYTES;
+            int cmp = compare(buf.getInt(rec), key);
+            if (cmp < 0) lo = mid + 1;
+            else if (cmp > 0) hi = mid - 1;
+            // Decoded per hit; Recommendation.of returns the pooled instance, so rows still compare by reference
+            else return recommendation(rec);
+        }
+        return rules.isEmpty() ? null : rules.match(pkg);
+    }
+
+    @Override
+    public int size() {
+        return count;
+    }
+
+    public long sourceSize() { return buf.getLong(8); }
+    public long sourceMtime() { return buf.getLong(16); }
+    public long sourceCrc() { return buf.getLong(24); }
+
+    /** Compares the stored string at {@code off} with {@code key}, as unsigned bytes. */
+    private int compare(int off, byte[] key) {
+        int len = buf.getInt(off);
+        int n = Math.min(len, key.length);
+        for (int i = 0; i < n; i++) {
+            int c = Byte.compareUnsigned(buf.get(off + 4 + i), key[i]);
+            if (c != 0) return c;
+        }
+        return Integer.compare(len, key.length);
+    }
+
+    private Recommendation recommendation(int rec) {
+        return Recommendation.of(string(buf.getInt(rec + 4)), string(buf.getInt(rec + 8)), string(buf.getInt(rec + 12)));
+    }
+
+    private String string(int off) {
+        byte[] bytes = new byte[buf.getInt(off)];
+        buf.get(off + 4, bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static ByteBuffer map(Path idx) throws IOException {
+        try (FileChannel ch = FileChannel.open(idx, StandardOpenOption.READ)) {
+            return ch.map(FileChannel.MapMode.READ_ONLY, 0, ch.size());
+        }
+    }
+
+    private static long crc(byte[] data) {
+        CRC32 crc = new CRC32();
+        crc.update(data);
+        return crc.getValue();
+    }
+}
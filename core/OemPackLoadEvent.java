@@ -0,0 +1,26 @@
+package core;
+
+import jdk.jfr.Category;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * JFR event covering one OEM pack lookup/load.
+ */
+@Name("uadb.OemPackLoad")
+@Label("OEM Pack Load")
+@Category({"Universal ADB Debloater", "Scan"})
+public class OemPackLoadEvent extends Event {
+    @Label("Manufacturer")
+    public String manufacturer;
+
+    @Label("File")
+    public String file;
+
+    @Label("Entries")
+    public int entries;
+
+    @Label("Cache Hit")
+    public boolean cacheHit;
+}
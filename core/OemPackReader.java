@@ -0,0 +1,246 @@
+package core;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Streaming, single-pass reader for OEM pack JSON. Reads characters from a
+ * Reader through a fixed buffer, tokenizes just enough JSON to walk the
+ * top-level "packages" array, and hands each entry's pkg, recommendedAction,
+ * risk and reason to a handler. String escapes (including \\uXXXX) are
+ * decoded; any other field, however deeply nested, is skipped.
+ */
+public class OemPackReader {
+    /** Receives one pack entry; fields missing from the entry are "". */
+    public interface EntryHandler {
+        void entry(String pkg, String action, String risk, String reason);
+    }
+
+    private static final int BUFFER_SIZE = 8192;
+
+    private final Reader in;
+    private final char[] buf = new char[BUFFER_SIZE];
+    private int pos;
+    private int limit;
+    private long consumed; // chars before buf[0], for error positions
+    private final StringBuilder sb = new StringBuilder(64);
+
+    private OemPackReader(Reader in) {
+        this.in = in;
+    }
+
+    /** Reads a pack into pkg -> recommendation; later duplicates win. */
+    public static Map<String, Recommendation> read(Reader in) throws IOException {
+        Map<String, Recommendation> map = new HashMap<>();
+        read(in, (pkg, action, risk, reason) -> map.put(pkg, Recommendation.of(action, risk, reason)));
+        return map;
+    }
+
+    /** Streams a pack's entries to {@code handler}; returns the number of entries. */
+    public static int read(Reader in, EntryHandler handler) throws IOException {
+        return new OemPackReader(in).readPack(handler);
+    }
+
+    private int readPack(EntryHandler handler) throws IOException {
+        int count = 0;
+        expect('{');
+        if (skipWhitespace() == '}') return 0;
+        while (true) {
+            expect('"');
+            String key = readString();
+            expect(':');
+            if ("packages".equals(key) && skipWhitespace() == '[') {
+                pos++;
+                count += readPackages(handler);
+            } else {
+                skipValue();
+            }
+            int c = nextNonWhitespace();
+            if (c == '}') return count;
+            if (c != ',') throw error("expected ',' or '}' in pack object");
+        }
+    }
+
+    private int readPackages(EntryHandler handler) throws IOException {
+        int count = 0;
+        if (skipWhitespace() == ']') {
+            pos++;
+            return 0;
+        }
+        while (true) {
+            if (skipWhitespace() == '{') {
+                pos++;
+                if (readEntry(handler)) count++;
+            } else {
+                skipValue();
+            }
+            int c = nextNonWhitespace();
+            if (c == ']') return count;
+            if (c != ',') throw error("expected ',' or ']' in packages array");
+        }
+    }
+
+    private boolean readEntry(EntryHandler handler) throws IOException {
+        String pkg = "", action = "", risk = "", reason = "";
+        if (skipWhitespace() == '}') {
+            pos++;
+            return false;
+        }
+        while (true) {
+            expect('"');
+            readChars(); // key, compared in place without allocating
+            expect(':');
+            if ("pkg".contentEquals(sb)) pkg = stringValue();
+            else if ("recommendedAction".contentEquals(sb)) action = stringValue();
+            else if ("risk".contentEquals(sb)) risk = stringValue();
+            else if ("reason".contentEquals(sb)) reason = stringValue();
+            else skipValue();
+            int c = nextNonWhitespace();
+            if (c == '}') break;
+            if (c != ',') throw error("expected ',' or '}' in package entry");
+        }
+        if (pkg.isBlank()) return false;
+        handler.entry(pkg, action, risk, reason);
+        return true;
+    }
+
+    /** A string value, or "" for null/number/other values (which are skipped). */
+    private String stringValue() throws IOException {
+        if (skipWhitespace() == '"') {
+            pos++;
+            return readString();
+        }
+        skipValue();
+        return "";
+    }
+
+    /** Reads the rest of a string whose opening quote was consumed. */
+    private String readString() throws IOException {
+        readChars();
+        return sb.toString();
+    }
+
+    /** Decodes the rest of a string whose opening quote was consumed into {@code sb}. */
+    private void readChars() throws IOException {
+        sb.setLength(0);
+        while (true) {
+            if (pos >= limit && !fill()) throw error("unterminated string");
+            // Copy the run of plain characters in one go
+            int start = pos;
+            while (pos < limit) {
+                char c = buf[pos];
+                if (c == '"' || c == '\\') break;
+                pos++;
+            }
+            sb.append(buf, start, pos - start);
+            if (pos >= limit) continue;
+            char c = buf[pos++];
+            if (c == '"') return;
+            sb.append(readEscape());
+        }
+    }
+
+    private char readEscape() throws IOException {
+        int c = read();
+        return switch (c) {
+            case '"', '\\', '/' -> (char) c;
+            case 'b' -> '\b';
+            case 'f' -> '\f';
+            case 'n' -> '\n';
+            case 'r' -> '\r';
+            case 't' -> '\t';
+            case 'u' -> {
+                int v = 0;
+                for (int i = 0; i < 4; i++) {
+                    int d = Character.digit(read(), 16);
+                    if (d < 0) throw error("bad \\u escape");
+                    v = (v << 4) | d;
+                }
+                yield (char) v;
+            }
+            default -> throw error("bad escape");
+        };
+    }
+
+    private void skipString() throws IOException {
+        while (true) {
+            int c = read();
+            if (c == '"') return;
+            if (c == '\\') read();
+            else if (c < 0) throw error("unterminated string");
+        }
+    }
+
+    /** Skips one value of any type, including nested objects and arrays. */
+    private void skipValue() throws IOException {
+        int c = nextNonWhitespace();
+        if (c == '"') {
+            skipString();
+        } else if (c == '{' || c == '[') {
+            int depth = 1;
+            while (depth > 0) {
+                int d = read();
+                if (d < 0) throw error("unterminated " + (c == '{' ? "object" : "array"));
+                if (d == '"') skipString();
+                else if (d == '{' || d == '[') depth++;
+                else if (d == '}' || d == ']') depth--;
+            }
+        } else if (c < 0 || c == ',' || c == '}' || c == ']' || c == ':') {
+            throw error("expected a value");
+        } else {
+            // Number or literal: runs until a delimiter
+            while (true) {
+                int d = peek();
+                if (d < 0 || d == ',' || d == '}' || d == ']' || Character.isWhitespace(d)) return;
+                pos++;
+            }
+        }
+    }
+
+    private void expect(char expected) throws IOException {
+        int c = nextNonWhitespace();
+        if (c != expected) throw error("expected '" + expected + "'");
+    }
+
+    private int nextNonWhitespace() throws IOException {
+        int c = skipWhitespace();
+        if (c >= 0) pos++;
+        return c;
+    }
+
+    /** Returns the next non-whitespace char without consuming it, or -1 at the end. */
+    private int skipWhitespace() throws IOException {
+        while (true) {
+            if (pos >= limit && !fill()) return -1;
+            char c = buf[pos];
+            if (c != ' ' && c != '\n' && c != '\r' && c != '\t' && c != '\uFEFF') return c;
+            pos++;
+        }
+    }
+
+    private int peek() throws IOException {
+        if (pos >= limit && !fill()) return -1;
+        return buf[pos];
+    }
+
+    private int read() throws IOException {
+        if (pos >= limit && !fill()) return -1;
+        return buf[pos++];
+    }
+
+    private boolean fill() throws IOException {
+        consumed += limit;
+        pos = 0;
+        limit = 0;
+        int n = in.read(buf, 0, buf.length);
+        if (n <= 0) return false;
+        limit = n;
+        return true;
+    }
+
+    private IOException error(String message) {
+        return new IOException("Malformed OEM pack at char " + (consumed + pos) + ": " + message);
+    }
+}
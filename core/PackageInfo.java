@@ -3,24 +3,66 @@ package core;
 public record PackageInfo(
         String pkg,
         String label,
-        String recommendedAction, // e.g., disable, uninstall, keep
-        String risk,              // e.g., low, medium, high
-        String reason,
-        boolean systemApp
+        Recommendation recommendation, // shared instance, Recommendation.EMPTY if none
+        boolean systemApp,
+        long versionCode,         // 0 if unknown
+        int uid,                  // -1 if unknown
+        String installer,         // installing package, "" if unknown
+        int flags,                // FLAG_* from dumpsys, 0 if unknown
+        int state                 // STATE_* for user 0, 0 if unknown
 ) {
+    // ApplicationInfo flags as printed by `dumpsys package` (flags=[ ... ])
+    public static final int FLAG_SYSTEM = 1;
+    public static final int FLAG_UPDATED_SYSTEM_APP = 1 << 1;
+    public static final int FLAG_PERSISTENT = 1 << 2;
+    public static final int FLAG_DEBUGGABLE = 1 << 3;
+
+    // Per-user package state (user 0 is the only user the app acts on)
+    public static final int STATE_INSTALLED = 1;
+    public static final int STATE_DISABLED = 1 << 1;
+    public static final int STATE_UNINSTALLED = 1 << 2;
+
+    public PackageInfo {
+        if (recommendation == null) recommendation = Recommendation.EMPTY;
+    }
+
+    public PackageInfo(String pkg, String label, Recommendation recommendation, boolean systemApp) {
+        this(pkg, label, recommendation, systemApp, 0, -1, "", 0, 0);
+    }
+
     public static PackageInfo of(String pkg) {
-        return new PackageInfo(pkg, "", "", "", "", false);
+        return new PackageInfo(pkg, "", Recommendation.EMPTY, false);
     }
 
-    public PackageInfo withRecommendation(String action, String risk, String reason) {
-        return new PackageInfo(pkg, label, action == null ? "" : action, risk == null ? "" : risk, reason == null ? "" : reason, systemApp);
+    public PackageInfo withRecommendation(Recommendation rec) {
+        return new PackageInfo(pkg, label, rec, systemApp, versionCode, uid, installer, flags, state);
     }
 
     public PackageInfo withSystem(boolean system) {
-        return new PackageInfo(pkg, label, recommendedAction, risk, reason, system);
+        return new PackageInfo(pkg, label, recommendation, system, versionCode, uid, installer, flags, state);
     }
 
     public PackageInfo withLabel(String lbl) {
-        return new PackageInfo(pkg, lbl == null ? "" : lbl, recommendedAction, risk, reason, systemApp);
+        return new PackageInfo(pkg, lbl == null ? "" : lbl, recommendation, systemApp, versionCode, uid, installer, flags, state);
+    }
+
+    public PackageInfo withDetails(long versionCode, int uid, String installer, int flags) {
+        return new PackageInfo(pkg, label, recommendation, systemApp, versionCode, uid, installer == null ? "" : installer, flags, state);
+    }
+
+    public PackageInfo withState(int state) {
+        return new PackageInfo(pkg, label, recommendation, systemApp, versionCode, uid, installer, flags, state);
+    }
+
+    public boolean hasFlag(int flag) {
+        return (flags & flag) != 0;
+    }
+
+    /** Human-readable user-0 state, or "" when the scan didn't report it. */
+    public String stateLabel() {
+        if ((state & STATE_UNINSTALLED) != 0) return "Uninstalled";
+        if ((state & STATE_DISABLED) != 0) return "Disabled";
+        if ((state & STATE_INSTALLED) != 0) return "Enabled";
+        return "";
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,26 @@
+package core;
+
+import jdk.jfr.Category;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * JFR event covering one package scan of a device.
+ */
+@Name("uadb.PackageScan")
+@Label("Package Scan")
+@Category({"Universal ADB Debloater", "Scan"})
+public class PackageScanEvent extends Event {
+    @Label("Serial")
+    public String serial;
+
+    @Label("Mode")
+    public String mode;
+
+    @Label("Packages")
+    public int packages;
+
+    @Label("Success")
+    public boolean success;
+}
@@ -1,59 +1,231 @@
 package core;
 
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
 
 /**
- * Scans installed packages using `pm list packages -f` and parses basic info.
+ * Scans installed packages using `pm list packages` (paths plus user-0 state),
+ * or, in DUMPSYS mode, reads full package state from one `dumpsys package`.
  */
 public class PackageScanner {
+    public enum Mode { LIST, DUMPSYS }
+
     private final AdbRunner adbRunner;
+    private final Mode mode;
+    // serial -> packages from the last successful rescan, in scan order
+    private final Map<String, Map<String, PackageInfo>> snapshots = new ConcurrentHashMap<>();
 
     public PackageScanner(AdbRunner adbRunner) {
+        this(adbRunner, Mode.LIST);
+    }
+
+    public PackageScanner(AdbRunner adbRunner, Mode mode) {
         this.adbRunner = adbRunner;
+        this.mode = mode;
     }
 
+    /** All packages, or an empty list if the scan failed. */
     public List<PackageInfo> listPackages(String serial) {
         List<PackageInfo> list = new ArrayList<>();
-        CommandResult res = adbRunner.run("-s", serial, "shell", "pm", "list", "packages", "-f");
+        return scan(serial, list::add) < 0 ? List.of() : list;
+    }
+
+    /**
+     * Scans with the configured mode and returns the number of packages found,
+     * or -1 if the scan failed; packages already streamed to {@code onPackage}
+     * are then incomplete and should be discarded. DUMPSYS falls back to the pm list scan if dumpsys
+     * fails or reports nothing (some OEM builds restrict it); packages dumpsys
+     * already handed to {@code onPackage} are not handed out again.
+     */
+    public int scan(String serial, Consumer<PackageInfo> onPackage) {
+        if (mode != Mode.DUMPSYS) return scanPackages(serial, onPackage);
+        Set<String> seen = new HashSet<>();
+        int found = scanPackageDetails(serial, p -> {
+            seen.add(p.pkg());
+            onPackage.accept(p);
+        });
+        if (found > 0) return found;
+        System.err.println("PackageScanner: dumpsys scan incomplete (" + seen.size() + " packages), falling back to pm list");
+        return scanPackages(serial, p -> {
+            if (!seen.contains(p.pkg())) onPackage.accept(p);
+        });
+    }
+
+    /**
+     * Streams one `dumpsys package packages` and extracts, per package, the
+     * user-0 state (installed/enabled), versionCode, uid, installer and flags.
+     * Replaces a per-package query with a single command; memory use is bounded
+     * by one package block regardless of the (often tens of MB) output size.
+     * Returns -1 if the command fails, even after packages were handed out.
+     */
+    public int scanPackageDetails(String serial, Consumer<PackageInfo> onPackage) {
+        PackageScanEvent event = new PackageScanEvent();
+        event.begin();
+        event.serial = serial;
+        event.mode = Mode.DUMPSYS.name();
+        DumpsysPackageParser parser = new DumpsysPackageParser(onPackage, this::getSimpleLabel);
+        CommandResult res = adbRunner.stream(parser::accept, "-s", serial, "shell", "dumpsys", "package", "packages");
+        if (res.isSuccess()) parser.finish();
+        event.success = res.isSuccess();
+        event.packages = parser.count();
+        event.commit();
+        if (!res.isSuccess()) {
+            // A partial list must not pass for the device's packages
+            System.err.println("PackageScanner: dumpsys package failed (exit code " + res.exitCode() + ") after " + parser.count() + " packages");
+            return -1;
+        }
+        System.out.println("PackageScanner: Parsed " + parser.count() + " packages from dumpsys");
+        return parser.count();
+    }
+
+    /**
+     * Streams one compound shell command that runs `pm list packages` with -d,
+     * -e and -s (names only) and then `-f -u` (paths, including packages removed
+     * for user 0), each section introduced by a marker line. The state sections
+     * come first so every package is handed to {@code onPackage} with its full
+     * state as soon as its path line arrives. Returns the number of packages
+     * found, or -1 if the command failed (after streaming part of the list).
+     */
+    public int scanPackages(String serial, Consumer<PackageInfo> onPackage) {
+        PackageScanEvent event = new PackageScanEvent();
+        event.begin();
+        event.serial = serial;
+        event.mode = Mode.LIST.name();
+        ListStateCollector collector = new ListStateCollector(onPackage);
+        CommandResult res = adbRunner.stream(collector::accept, "-s", serial, "shell", STATE_SCAN_COMMAND);
+        event.success = res.isSuccess();
+        event.packages = collector.count;
+        event.commit();
         if (!res.isSuccess()) {
             System.err.println("PackageScanner: Failed to list packages (exit code " + res.exitCode() + ")");
-            System.err.println("Output: " + res.stdout());
             System.err.println("Error: " + res.stderr());
-            return list;
+            return -1;
         }
-        String output = res.stdout();
-        if (output == null || output.isBlank()) {
+        if (collector.count == 0) {
             System.err.println("PackageScanner: Empty output from pm list packages");
-            return list;
         }
-        for (String line : output.split("\n")) {
-            line = line.trim();
-            // Typical: package:/system/app/Whatever/whatever.apk=com.vendor.app
-            if (line.startsWith("package:")) {
-                int eq = line.indexOf('=');
-                if (eq > 0 && eq + 1 < line.length()) {
-                    String left = line.substring(8, eq); // path
-                    String pkg = line.substring(eq + 1).trim();
-                    boolean system = left.contains("/system/") || left.contains("/product/") || left.contains("/system_ext/");
-                    String label = getSimpleLabel(pkg);
-                    list.add(PackageInfo.of(pkg).withSystem(system).withLabel(label));
-                }
+        System.out.println("PackageScanner: Parsed " + collector.count + " packages");
+        return collector.count;
+    }
+
+    private static final String SECTION_MARKER = "::uadb-section ";
+    private static final String STATE_SCAN_COMMAND =
+            "echo '" + SECTION_MARKER + "disabled'; pm list packages -d --user 0; "
+            + "echo '" + SECTION_MARKER + "enabled'; pm list packages -e --user 0; "
+            + "echo '" + SECTION_MARKER + "system'; pm list packages -s --user 0; "
+            + "echo '" + SECTION_MARKER + "all'; "
+            // --show-versioncode needs Android 9+; older pm rejects it before printing anything
+            + "pm list packages -f -u --show-versioncode --user 0 2>/dev/null || pm list packages -f -u --user 0";
+
+    /** Collects the name-only sections, then emits packages from the `-f -u` section. */
+    private class ListStateCollector {
+        private final Consumer<PackageInfo> onPackage;
+        private final Set<String> disabled = new HashSet<>();
+        private final Set<String> enabled = new HashSet<>();
+        private final Set<String> system = new HashSet<>();
+        private Set<String> section;
+        private boolean inAll;
+        int count;
+
+        ListStateCollector(Consumer<PackageInfo> onPackage) {
+            this.onPackage = onPackage;
+        }
+
+        void accept(String line) {
+            if (line.startsWith(SECTION_MARKER)) {
+                String name = line.substring(SECTION_MARKER.length()).trim();
+                inAll = "all".equals(name);
+                section = switch (name) {
+                    case "disabled" -> disabled;
+                    case "enabled" -> enabled;
+                    case "system" -> system;
+                    default -> null;
+                };
+                return;
             }
+            if (section != null) {
+                String name = PmListParser.name(line);
+                if (name != null) section.add(name);
+                return;
+            }
+            PackageInfo p = PmListParser.parse(line);
+            if (p != null && inAll) {
+                count++;
+                onPackage.accept(withListState(p));
+            } else if (!line.isBlank()) {
+                System.err.println("PackageScanner: Unexpected output: " + line);
+            }
+        }
+
+        private PackageInfo withListState(PackageInfo p) {
+            // Without -u, -d and -e only list packages installed for the user
+            int state;
+            if (disabled.contains(p.pkg())) {
+                state = PackageInfo.STATE_INSTALLED | PackageInfo.STATE_DISABLED;
+            } else if (enabled.contains(p.pkg())) {
+                state = PackageInfo.STATE_INSTALLED;
+            } else {
+                state = PackageInfo.STATE_UNINSTALLED;
+            }
+            boolean sys = p.systemApp() || system.contains(p.pkg());
+            return new PackageInfo(p.pkg(), p.label(), Recommendation.EMPTY, sys, p.versionCode(), -1, "", 0, state);
         }
-        System.out.println("PackageScanner: Parsed " + list.size() + " packages");
-        return list;
+    }
+
+    /**
+     * Scans like {@link #scan} (streaming to {@code onPackage} if not null) and
+     * diffs the result against the previous rescan of the same serial; the
+     * first rescan reports every package as added. A scan that fails returns
+     * {@link ScanDiff#FAILED} and one that finds nothing returns an empty diff;
+     * either way the snapshot stays as it was.
+     */
+    public ScanDiff rescan(String serial, Consumer<PackageInfo> onPackage) {
+        Map<String, PackageInfo> current = new LinkedHashMap<>();
+        int found = scan(serial, p -> {
+            current.put(p.pkg(), p);
+            if (onPackage != null) onPackage.accept(p);
+        });
+        if (found < 0) return ScanDiff.FAILED;
+        if (found == 0) return ScanDiff.EMPTY;
+        Map<String, PackageInfo> previous = snapshots.put(serial, current);
+        ScanDiff diff = ScanDiff.compute(previous == null ? Map.of() : previous, current);
+        System.out.println("PackageScanner: " + serial + " +" + diff.added().size() + " -" + diff.removed().size()
+                + " ~" + diff.changed().size());
+        return diff;
+    }
+
+    public CompletableFuture<ScanDiff> rescanAsync(String serial, Consumer<PackageInfo> onPackage) {
+        return adbRunner.getScheduler().submit(serial, () -> rescan(serial, onPackage));
+    }
+
+    /** Packages from the last rescan of a serial (empty if none). */
+    public Map<String, PackageInfo> snapshot(String serial) {
+        Map<String, PackageInfo> s = snapshots.get(serial);
+        return s == null ? Map.of() : Collections.unmodifiableMap(s);
+    }
+
+    /** Drops a serial's snapshot so the next rescan starts from scratch. */
+    public void forget(String serial) {
+        snapshots.remove(serial);
+    }
+
+    /**
+     * Runs {@link #scan} on the runner's scheduler, holding one of the
+     * device's permits for the duration of the scan.
+     */
+    public CompletableFuture<Integer> scanPackagesAsync(String serial, Consumer<PackageInfo> onPackage) {
+        return adbRunner.getScheduler().submit(serial, () -> scan(serial, onPackage));
     }
 
     private String getSimpleLabel(String pkg) {
-        // Quick heuristic: use last part of package name
-        // Example: com.oneplus.weather -> Weather
-        String[] parts = pkg.split("\\.");
-        if (parts.length > 0) {
-            String last = parts[parts.length - 1];
-            // Capitalize first letter
-            return last.substring(0, 1).toUpperCase() + last.substring(1);
-        }
-        return pkg;
+        return PmListParser.simpleLabel(pkg);
     }
 }
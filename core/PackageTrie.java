@@ -0,0 +1,68 @@
+package core;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Namespace rules (`com.miui.analytics.*`) keyed by dot-separated segments.
+ * A rule covers its namespace package itself and everything below it; when
+ * several rules match, the deepest (most specific) one wins. A lookup walks
+ * at most one node per segment of the package name.
+ */
+public final class PackageTrie<V> {
+    private static final String WILDCARD = ".*";
+
+    private static final class Node<V> {
+        Map<String, Node<V>> children;
+        V value;
+    }
+
+    private final Node<V> root = new Node<>();
+    private int size;
+
+    /** True for pack keys that are namespace patterns rather than package names. */
+    public static boolean isPattern(String key) {
+        return key.length() > WILDCARD.length() && key.endsWith(WILDCARD);
+    }
+
+    /** Adds a rule for a pattern key (`a.b.*`); later rules for the same namespace replace earlier ones. */
+    public void put(String pattern, V value) {
+        String namespace = pattern.substring(0, pattern.length() - WILDCARD.length());
+        Node<V> node = root;
+        int start = 0;
+        while (true) {
+            int dot = namespace.indexOf('.', start);
+            String segment = namespace.substring(start, dot < 0 ? namespace.length() : dot);
+            if (node.children == null) node.children = new HashMap<>();
+            node = node.children.computeIfAbsent(segment, s -> new Node<>());
+            if (dot < 0) break;
+            start = dot + 1;
+        }
+        if (node.value == null) size++;
+        node.value = value;
+    }
+
+    /** Value of the most specific rule covering {@code pkg}, or null. */
+    public V match(String pkg) {
+        Node<V> node = root;
+        V best = null;
+        int start = 0;
+        while (node.children != null) {
+            int dot = pkg.indexOf('.', start);
+            node = node.children.get(pkg.substring(start, dot < 0 ? pkg.length() : dot));
+            if (node == null) break;
+            if (node.value != null) best = node.value;
+            if (dot < 0) break;
+            start = dot + 1;
+        }
+        return best;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+}
@@ -0,0 +1,124 @@
+package core;
+
+import java.util.function.Consumer;
+
+/**
+ * Single-pass parser for `pm list packages` output that works on character
+ * ranges of the buffer it is given. A package line costs two Strings (name
+ * and label) plus the PackageInfo; no trim/split/substring intermediates.
+ */
+final class PmListParser {
+    private static final String PREFIX = "package:";
+    private static final String VERSION_CODE = "versionCode:";
+    private static final String[] SYSTEM_PREFIXES = {"/system/", "/product/", "/system_ext/"};
+
+    private PmListParser() {}
+
+    /** Parses every line of a whole output buffer; returns the number of packages. */
+    static int parseAll(CharSequence out, Consumer<PackageInfo> onPackage) {
+        int count = 0;
+        int len = out.length();
+        int start = 0;
+        while (start < len) {
+            int end = start;
+            while (end < len && out.charAt(end) != '\n') end++;
+            PackageInfo p = parse(out, start, end);
+            if (p != null) {
+                onPackage.accept(p);
+                count++;
+            }
+            start = end + 1;
+        }
+        return count;
+    }
+
+    static PackageInfo parse(CharSequence line) {
+        return parse(line, 0, line.length());
+    }
+
+    /**
+     * Parses `package:<path>=<pkg>[ versionCode:<n>]` in {@code s[start, end)},
+     * or returns null if the range isn't a package line with a path.
+     */
+    static PackageInfo parse(CharSequence s, int start, int end) {
+        while (start < end && s.charAt(start) <= ' ') start++;
+        while (end > start && s.charAt(end - 1) <= ' ') end--;
+        if (!regionMatches(s, start, end, PREFIX)) return null;
+        int path = start + PREFIX.length();
+
+        // The package name follows the last '=' (paths may contain '=') and ends at the first space
+        int eq = -1;
+        int space = -1;
+        int dot = -1;
+        for (int i = path; i < end; i++) {
+            char c = s.charAt(i);
+            if (c == '=') {
+                eq = i;
+                space = -1;
+                dot = -1;
+            } else if (space < 0) {
+                if (c == ' ') space = i;
+                else if (c == '.') dot = i;
+            }
+        }
+        int pkgEnd = space < 0 ? end : space;
+        if (eq <= path || eq + 1 >= pkgEnd) return null;
+
+        long versionCode = 0;
+        if (space >= 0) {
+            int v = space;
+            while (v < end && s.charAt(v) == ' ') v++;
+            if (regionMatches(s, v, end, VERSION_CODE)) {
+                for (v += VERSION_CODE.length(); v < end; v++) {
+                    char c = s.charAt(v);
+                    if (c < '0' || c > '9') break;
+                    versionCode = versionCode * 10 + (c - '0');
+                }
+            }
+        }
+
+        boolean system = false;
+        for (String prefix : SYSTEM_PREFIXES) {
+            if (regionMatches(s, path, eq, prefix)) {
+                system = true;
+                break;
+            }
+        }
+        String pkg = s.subSequence(eq + 1, pkgEnd).toString();
+        // A name ending in '.' has no last segment; like simpleLabel, use the whole name
+        String label = label(s, dot > eq && dot + 1 < pkgEnd ? dot + 1 : eq + 1, pkgEnd);
+        return new PackageInfo(pkg, label, Recommendation.EMPTY, system, versionCode, -1, "", 0, 0);
+    }
+
+    /** Parses a name-only `package:<pkg>` line (pm list without -f); null otherwise. */
+    static String name(CharSequence s) {
+        int start = 0;
+        int end = s.length();
+        while (start < end && s.charAt(start) <= ' ') start++;
+        while (end > start && s.charAt(end - 1) <= ' ') end--;
+        if (!regionMatches(s, start, end, PREFIX) || end - start == PREFIX.length()) return null;
+        return s.subSequence(start + PREFIX.length(), end).toString();
+    }
+
+    /** Heuristic label: last package segment, capitalized (com.oneplus.weather -> Weather). */
+    static String simpleLabel(String pkg) {
+        int dot = pkg.lastIndexOf('.');
+        return pkg.isEmpty() ? pkg : label(pkg, dot + 1 < pkg.length() ? dot + 1 : 0, pkg.length());
+    }
+
+    private static String label(CharSequence s, int start, int end) {
+        if (start >= end) return "";
+        char[] chars = new char[end - start];
+        for (int i = start; i < end; i++) chars[i - start] = s.charAt(i);
+        chars[0] = Character.toUpperCase(chars[0]);
+        return new String(chars);
+    }
+
+    private static boolean regionMatches(CharSequence s, int from, int end, String prefix) {
+        if (end - from < prefix.length()) return false;
+        for (int i = 0; i < prefix.length(); i++) {
+            if (s.charAt(from + i) != prefix.charAt(i)) return false;
+        }
+        return true;
+    }
+}
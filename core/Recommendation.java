@@ -0,0 +1,94 @@
+package core;
+
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Immutable OEM pack recommendation for one package. Instances are
+ * flyweights: {@link #of} returns a shared instance for equal values (and
+ * {@link #EMPTY} when there is nothing to recommend), with reasons interned,
+ * so packs whose entries repeat the same advice share one object.
+ */
+public record Recommendation(Action action, Risk risk, String reason) {
+    public enum Action {
+        NONE(""), KEEP("keep"), DISABLE("disable"), UNINSTALL("uninstall");
+
+        private final String label;
+
+        Action(String label) {
+            this.label = label;
+        }
+
+        /** The pack spelling ("disable"), "" for NONE. */
+        public String label() {
+            return label;
+        }
+
+        /** Parses a pack value; unknown values are NONE. */
+        public static Action parse(String s) {
+            if (s == null) return NONE;
+            return switch (s.trim().toLowerCase(Locale.ROOT)) {
+                case "keep" -> KEEP;
+                case "disable" -> DISABLE;
+                case "uninstall" -> UNINSTALL;
+                default -> NONE;
+            };
+        }
+    }
+
+    public enum Risk {
+        NONE(""), LOW("low"), MEDIUM("medium"), HIGH("high");
+
+        private final String label;
+
+        Risk(String label) {
+            this.label = label;
+        }
+
+        /** The pack spelling ("low"), "" for NONE. */
+        public String label() {
+            return label;
+        }
+
+        /** Parses a pack value; unknown values are NONE. */
+        public static Risk parse(String s) {
+            if (s == null) return NONE;
+            return switch (s.trim().toLowerCase(Locale.ROOT)) {
+                case "low" -> LOW;
+                case "medium" -> MEDIUM;
+                case "high" -> HIGH;
+                default -> NONE;
+            };
+        }
+    }
+
+    public static final Recommendation EMPTY = new Recommendation(Action.NONE, Risk.NONE, "");
+
+    // Shared instances by value; bounded by the distinct advice across loaded packs
+    private static final Map<Recommendation, Recommendation> POOL = new ConcurrentHashMap<>();
+    private static final Map<String, String> REASONS = new ConcurrentHashMap<>();
+
+    public Recommendation {
+        reason = reason == null ? "" : reason;
+    }
+
+    public static Recommendation of(String action, String risk, String reason) {
+        return of(Action.parse(action), Risk.parse(risk), reason);
+    }
+
+    public static Recommendation of(Action action, Risk risk, String reason) {
+        if (reason != null && !reason.isEmpty()) {
+            String interned = REASONS.putIfAbsent(reason, reason);
+            if (interned != null) reason = interned;
+        }
+        Recommendation r = new Recommendation(action, risk, reason);
+        if (r.equals(EMPTY)) return EMPTY;
+        Recommendation shared = POOL.putIfAbsent(r, r);
+        return shared != null ? shared : r;
+    }
+
+    public boolean isEmpty() {
+        return this == EMPTY || equals(EMPTY);
+    }
+}
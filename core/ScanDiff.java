@@ -0,0 +1,39 @@
+package core;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Difference between two package scans of one device. {@code changed} holds
+ * the new PackageInfo of packages present in both scans whose state,
+ * version or other scanned details differ. {@link #FAILED} stands for a scan
+ * that did not complete; it has no changes and a total of -1.
+ */
+public record ScanDiff(List<PackageInfo> added, List<PackageInfo> removed, List<PackageInfo> changed, int total) {
+    public static final ScanDiff EMPTY = new ScanDiff(List.of(), List.of(), List.of(), 0);
+    public static final ScanDiff FAILED = new ScanDiff(List.of(), List.of(), List.of(), -1);
+
+    public boolean isFailed() {
+        return total < 0;
+    }
+
+    public boolean isEmpty() {
+        return added.isEmpty() && removed.isEmpty() && changed.isEmpty();
+    }
+
+    public static ScanDiff compute(Map<String, PackageInfo> previous, Map<String, PackageInfo> current) {
+        List<PackageInfo> added = new ArrayList<>();
+        List<PackageInfo> removed = new ArrayList<>();
+        List<PackageInfo> changed = new ArrayList<>();
+        for (PackageInfo p : current.values()) {
+            PackageInfo before = previous.get(p.pkg());
+            if (before == null) added.add(p);
+            else if (!before.equals(p)) changed.add(p);
+        }
+        for (PackageInfo p : previous.values()) {
+            if (!current.containsKey(p.pkg())) removed.add(p);
+        }
+        return new ScanDiff(added, removed, changed, current.size());
+    }
+}
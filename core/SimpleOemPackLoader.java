@@ -1,99 +1,246 @@
 package core;
 
 import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.ClosedWatchServiceException;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
 import java.util.Locale;
 import java.util.Map;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.BiConsumer;
 
 /**
- * Simple OEM pack loader using minimal regex-based parsing.
+ * Simple OEM pack loader. The newest pack for a manufacturer is found through
+ * an OemPackDirectory index; sub-brands also get their parent brand's pack
+ * underneath their own (e.g. realme over oppo). Packs are served from their
+ * compiled, memory-mapped OemPackIndex (rebuilt when the JSON changes); if
+ * that fails, the JSON is parsed with the streaming OemPackReader.
+ * Loads are safe from any thread and each pack is read once. With
+ * {@link #startWatching()}, edited packs are reloaded in the background and
+ * swapped in, and reload listeners are told which manufacturer changed.
  */
-public class SimpleOemPackLoader {
+public class SimpleOemPackLoader implements AutoCloseable {
+    // Editors often save in several steps; wait this long for a burst of events to end
+    private static final long RELOAD_SETTLE_MS = 300;
+
+    // Sub-brand -> brands whose packs also apply, most specific first
+    private static final Map<String, List<String>> ALIASES = Map.of(
+            "redmi", List.of("xiaomi"),
+            "poco", List.of("xiaomi"),
+            "realme", List.of("oppo"),
+            "oneplus", List.of("oppo"),
+            "oplus", List.of("oppo"),
+            "iqoo", List.of("vivo"),
+            "hmd-global", List.of("nokia"));
+
     private final Path packsDir;
-    // In-memory cache: manufacturer (normalized) -> map(pkg -> [action,risk,reason])
-    private final Map<String, Map<String, String[]>> cache = new HashMap<>();
+    private final OemPackDirectory directory;
+    // manufacturer (normalized) -> pack (pkg -> recommendation); concurrent
+    // loads of one manufacturer wait on the same future instead of parsing twice
+    private final Map<String, CompletableFuture<OemPack>> cache = new ConcurrentHashMap<>();
+    // manufacturer (normalized) -> pack file names it was built from, most specific first
+    private final Map<String, List<String>> packFiles = new ConcurrentHashMap<>();
+    private final List<BiConsumer<String, OemPack>> listeners = new CopyOnWriteArrayList<>();
+    private WatchService watchService;
+    private Thread watchThread;
 
     public SimpleOemPackLoader(Path packsDir) {
         this.packsDir = packsDir;
+        this.directory = new OemPackDirectory(packsDir);
+    }
+
+    /** Returns the manufacturer's pack (pkg -> recommendation), or an empty one */
+    public OemPack loadForManufacturer(String manufacturer) {
+        OemPackLoadEvent event = new OemPackLoadEvent();
+        event.begin();
+        event.manufacturer = manufacturer;
+        OemPack result = load(manufacturer, event);
+        event.entries = result.size();
+        event.commit();
+        return result;
     }
 
-    private static final Pattern ITEM_PATTERN = Pattern.compile("\\{[^}]*\\}", Pattern.DOTALL);
-    private static final Pattern PKG_PATTERN = Pattern.compile("\\\"pkg\\\"\\s*:\\s*\\\"([^\\\"]+)\\\"");
-    private static final Pattern ACTION_PATTERN = Pattern.compile("\\\"recommendedAction\\\"\\s*:\\s*\\\"([^\\\"]*)\\\"");
-    private static final Pattern RISK_PATTERN = Pattern.compile("\\\"risk\\\"\\s*:\\s*\\\"([^\\\"]*)\\\"");
-    private static final Pattern REASON_PATTERN = Pattern.compile("\\\"reason\\\"\\s*:\\s*\\\"([^\\\"]*)\\\"");
-
-    /** Returns map of pkg -> [action, risk, reason] */
-    public Map<String, String[]> loadForManufacturer(String manufacturer, String defaultSuffix) {
-        Map<String, String[]> map = new HashMap<>();
-        if (manufacturer == null || manufacturer.isBlank()) return map;
-        
-        // Normalize and sanitize manufacturer name for filesystem
-        String norm = manufacturer.toLowerCase(Locale.ROOT)
+    /** Normalized, filesystem-safe manufacturer key ("" if nothing is left). */
+    public static String normalize(String manufacturer) {
+        if (manufacturer == null) return "";
+        return manufacturer.toLowerCase(Locale.ROOT)
                 .replaceAll("\\s+", "-")
                 .replaceAll("[^a-z0-9-]", ""); // Remove any non-alphanumeric except dash
-        
+    }
+
+    private OemPack load(String manufacturer, OemPackLoadEvent event) {
+        if (manufacturer == null || manufacturer.isBlank()) return OemPack.EMPTY;
+
+        String norm = normalize(manufacturer);
         if (norm.isBlank()) {
             System.err.println("SimpleOemPackLoader: Manufacturer name sanitized to empty string, skipping: " + manufacturer);
-            return map;
+            return OemPack.EMPTY;
         }
-        
-        if (cache.containsKey(norm)) {
+
+        CompletableFuture<OemPack> mine = new CompletableFuture<>();
+        CompletableFuture<OemPack> existing = cache.putIfAbsent(norm, mine);
+        if (existing != null) {
             System.out.println("SimpleOemPackLoader: Cache hit for '" + norm + "'");
-            return cache.get(norm);
+            event.cacheHit = true;
+            return existing.join();
         }
-        
-        String fileName = norm + (defaultSuffix == null ? "" : defaultSuffix);
-        Path file = packsDir.resolve(fileName);
-        System.out.println("SimpleOemPackLoader: Looking for OEM pack: " + file);
-        
-        if (!Files.exists(file)) {
-            System.out.println("SimpleOemPackLoader: No OEM pack found for '" + norm + "' at " + file);
-            return map;
+
+        List<String> files = resolveFiles(norm);
+        event.file = String.join(",", files);
+        packFiles.put(norm, files);
+        try {
+            mine.complete(readPacks(norm, files));
+        } catch (RuntimeException e) {
+            cache.remove(norm, mine);
+            mine.completeExceptionally(e);
+            throw e;
         }
-        
+        return mine.join();
+    }
+
+    /** Newest pack files for a manufacturer and the brands it is an alias of, most specific first. */
+    private List<String> resolveFiles(String norm) {
+        List<String> files = new ArrayList<>();
+        String own = directory.latest(norm);
+        if (own != null) files.add(own);
+        for (String base : ALIASES.getOrDefault(norm, List.of())) {
+            String file = directory.latest(base);
+            if (file != null) files.add(file);
+        }
+        return files;
+    }
+
+    private OemPack readPacks(String norm, List<String> files) {
+        if (files.isEmpty()) {
+            System.out.println("SimpleOemPackLoader: No OEM pack found for '" + norm + "' in " + packsDir);
+            return OemPack.EMPTY;
+        }
+        List<OemPack> packs = new ArrayList<>();
+        for (String file : files) packs.add(readPack(file));
+        return OemPack.layered(packs);
+    }
+
+    /** Reads one pack file; an unreadable pack yields an empty pack. */
+    private OemPack readPack(String fileName) {
+        Path file = packsDir.resolve(fileName);
+        System.out.println("SimpleOemPackLoader: Loading OEM pack: " + file);
+
         try {
-            String json = Files.readString(file, StandardCharsets.UTF_8);
-            Map<String, String[]> loaded = extractPackages(json);
-            cache.put(norm, loaded);
+            OemPack loaded = OemPackIndex.open(file);
+            System.out.println("SimpleOemPackLoader: Mapped " + loaded.size() + " entries from " + fileName + OemPackIndex.SUFFIX);
+            return loaded;
+        } catch (IOException e) {
+            System.err.println("SimpleOemPackLoader: No index for " + fileName + " (" + e.getMessage() + "), parsing JSON");
+        }
+        try (Reader in = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            OemPack loaded = OemPack.of(OemPackReader.read(in));
             System.out.println("SimpleOemPackLoader: Loaded " + loaded.size() + " entries from " + fileName);
             return loaded;
         } catch (IOException e) {
             System.err.println("SimpleOemPackLoader: Failed to load " + fileName + ": " + e.getMessage());
-            return map;
+            return OemPack.EMPTY;
         }
     }
 
-    public static Map<String, String[]> extractPackages(String json) {
-        Map<String, String[]> map = new HashMap<>();
-        int arrIdx = json.indexOf("\"packages\"");
-        if (arrIdx < 0) return map;
-        int bracket = json.indexOf('[', arrIdx);
-        if (bracket < 0) return map;
-        int depth = 0; int end = -1;
-        for (int i = bracket; i < json.length(); i++) {
-            char c = json.charAt(i);
-            if (c == '[') depth++;
-            else if (c == ']') { depth--; if (depth == 0) { end = i; break; } }
+    public static Map<String, Recommendation> extractPackages(String json) {
+        try {
+            return OemPackReader.read(new StringReader(json));
+        } catch (IOException e) {
+            System.err.println("SimpleOemPackLoader: " + e.getMessage());
+            return new HashMap<>();
+        }
+    }
+
+    /** Called with (normalized manufacturer, new pack) after a pack is reloaded, on the watcher thread. */
+    public void addReloadListener(BiConsumer<String, OemPack> listener) {
+        listeners.add(listener);
+    }
+
+    /**
+     * Watches the packs directory and reloads packs whose JSON is created,
+     * modified or deleted, including switching to a newly added dated release.
+     * Only manufacturers that were already loaded (or looked for) are
+     * reloaded. Does nothing if the directory doesn't exist.
+     */
+    public synchronized void startWatching() {
+        if (watchThread != null || !Files.isDirectory(packsDir)) return;
+        try {
+            watchService = packsDir.getFileSystem().newWatchService();
+            packsDir.register(watchService, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY,
+                    StandardWatchEventKinds.ENTRY_DELETE);
+        } catch (IOException e) {
+            System.err.println("SimpleOemPackLoader: Cannot watch " + packsDir + ": " + e.getMessage());
+            return;
+        }
+        WatchService ws = watchService;
+        watchThread = Thread.ofVirtual().name("oem-pack-watcher").start(() -> watchLoop(ws));
+    }
+
+    private void watchLoop(WatchService ws) {
+        try {
+            while (true) {
+                Set<String> changed = new HashSet<>();
+                collect(ws.take(), changed);
+                Thread.sleep(RELOAD_SETTLE_MS);
+                WatchKey more;
+                while ((more = ws.poll()) != null) collect(more, changed);
+                if (!changed.isEmpty()) reload(changed);
+            }
+        } catch (InterruptedException | ClosedWatchServiceException e) {
+            // Watcher closed
+        }
+    }
+
+    private void collect(WatchKey key, Set<String> changed) {
+        for (WatchEvent<?> e : key.pollEvents()) {
+            if (e.kind() == StandardWatchEventKinds.OVERFLOW) {
+                for (List<String> files : packFiles.values()) changed.addAll(files);
+            } else if (e.context() instanceof Path p && p.toString().endsWith(".json")) {
+                // Our own .idx writes land here too and are ignored
+                changed.add(p.toString());
+            }
         }
-        if (end < 0) return map;
-        String arr = json.substring(bracket + 1, end);
-        Matcher m = ITEM_PATTERN.matcher(arr);
-        while (m.find()) {
-            String obj = m.group();
-            String pkg = group(PKG_PATTERN, obj);
-            if (pkg == null || pkg.isBlank()) continue;
-            String action = def(group(ACTION_PATTERN, obj));
-            String risk = def(group(RISK_PATTERN, obj));
-            String reason = def(group(REASON_PATTERN, obj));
-            map.put(pkg, new String[]{action, risk, reason});
+        key.reset();
+    }
+
+    /**
+     * Reloads every manufacturer whose packs changed, or whose newest pack
+     * files are different now (a new dated release, a removed file).
+     */
+    private void reload(Set<String> changedFiles) {
+        directory.invalidate();
+        for (Map.Entry<String, List<String>> e : packFiles.entrySet()) {
+            String norm = e.getKey();
+            List<String> files = resolveFiles(norm);
+            boolean touched = !files.equals(e.getValue());
+            for (String f : files) touched |= changedFiles.contains(f);
+            if (!touched) continue;
+            packFiles.put(norm, files);
+            OemPack pack = readPacks(norm, files);
+            cache.put(norm, CompletableFuture.completedFuture(pack));
+            System.out.println("SimpleOemPackLoader: Reloaded '" + norm + "' (" + pack.size() + " entries)");
+            for (BiConsumer<String, OemPack> listener : listeners) {
+                try {
+                    listener.accept(norm, pack);
+                } catch (RuntimeException ex) {
+                    System.err.println("SimpleOemPackLoader: Reload listener failed: " + ex.getMessage());
+                }
+            }
         }
-        return map;
     }
 
     /**
@@ -101,8 +248,18 @@ public class SimpleOemPackLoader {
      */
     public void clearCache() {
         cache.clear();
+        directory.invalidate();
     }
 
-    private static String group(Pattern p, String s) { Matcher m = p.matcher(s); return m.find() ? m.group(1) : null; }
-    private static String def(String s) { return s == null ? "" : s; }
+    @Override
+    public synchronized void close() {
+        if (watchService != null) {
+            try { watchService.close(); } catch (IOException ignored) {}
+            watchService = null;
+        }
+        if (watchThread != null) {
+            watchThread.interrupt();
+            watchThread = null;
+        }
+    }
 }
@@ -0,0 +1,50 @@
+package core;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/** String <-> dense int code table for columnar stores; code 0 is always "". */
+final class StringDictionary {
+    private final Map<String, Integer> codes = new HashMap<>();
+    private final List<String> values = new ArrayList<>();
+
+    StringDictionary() {
+        clear();
+    }
+
+    /** Code of {@code s}, adding it if it is new. */
+    int code(String s) {
+        Integer code = codes.get(s);
+        if (code != null) return code;
+        values.add(s);
+        codes.put(s, values.size() - 1);
+        return values.size() - 1;
+    }
+
+    /** Code of {@code s}, or -1 if it was never added. */
+    int find(String s) {
+        Integer code = codes.get(s);
+        return code != null ? code : -1;
+    }
+
+    String get(int code) {
+        return values.get(code);
+    }
+
+    /** The strings by code, as of now. */
+    String[] toArray() {
+        return values.toArray(new String[0]);
+    }
+
+    int size() {
+        return values.size();
+    }
+
+    void clear() {
+        codes.clear();
+        values.clear();
+        code("");
+    }
+}
@@ -0,0 +1,167 @@
+package core;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.Locale;
+import java.util.function.Function;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Streams rows to a CSV, JSON Lines or plain-text file, gzipped when the name
+ * ends in .gz, through a buffered writer on a FileChannel. Each row is
+ * formatted and written as it is read, so an export never holds the whole
+ * report in memory. Output goes to a temp file that replaces the target only
+ * once complete; an interrupted thread (a cancelled Task) stops the export.
+ */
+public final class TableExporter {
+    private static final int BUFFER_BYTES = 64 * 1024;
+    // Rows between progress callbacks and cancellation checks
+    private static final int PROGRESS_EVERY = 4096;
+
+    public enum Format {
+        CSV, JSONL, TEXT;
+
+        /** Format from a file name: .csv, .jsonl/.json, anything else is text; a .gz suffix is ignored. */
+        public static Format forFile(String name) {
+            String n = name.toLowerCase(Locale.ROOT);
+            if (n.endsWith(".gz")) n = n.substring(0, n.length() - 3);
+            if (n.endsWith(".csv")) return CSV;
+            if (n.endsWith(".jsonl") || n.endsWith(".json")) return JSONL;
+            return TEXT;
+        }
+    }
+
+    /** One output column: its JSON key, its header title and how to read it from a row. */
+    public record Column<T>(String key, String title, Function<? super T, String> value) {}
+
+    public interface Progress {
+        void update(long done, long total);
+    }
+
+    private TableExporter() {}
+
+    /**
+     * Writes {@code rows} to {@code file} in the format its name implies and
+     * returns the number of rows written. {@code title} heads text exports.
+     */
+    public static <T> long export(Path file, String title, List<Column<T>> columns, List<? extends T> rows, Progress progress)
+            throws IOException {
+        String name = file.getFileName().toString();
+        Format format = Format.forFile(name);
+        Path tmp = file.resolveSibling(name + ".tmp");
+        long written = 0;
+        long total = rows.size();
+        try (FileChannel channel = FileChannel.open(tmp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            OutputStream out = Channels.newOutputStream(channel);
+            if (name.toLowerCase(Locale.ROOT).endsWith(".gz")) out = new GZIPOutputStream(out, BUFFER_BYTES);
+            try (Writer w = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8), BUFFER_BYTES)) {
+                writeHeader(w, format, title, columns);
+                String[] values = new String[columns.size()];
+                for (T row : rows) {
+                    for (int i = 0; i < values.length; i++) {
+                        String v = columns.get(i).value().apply(row);
+                        values[i] = v == null ? "" : v;
+                    }
+                    writeRow(w, format, columns, values);
+                    if (++written % PROGRESS_EVERY == 0) {
+                        if (Thread.currentThread().isInterrupted()) throw new InterruptedIOException("Export cancelled");
+                        if (progress != null) progress.update(written, total);
+                    }
+                }
+            }
+        } catch (IOException | RuntimeException e) {
+            Files.deleteIfExists(tmp);
+            throw e;
+        }
+        Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        if (progress != null) progress.update(written, total);
+        return written;
+    }
+
+    private static void writeHeader(Writer w, Format format, String title, List<? extends Column<?>> columns) throws IOException {
+        switch (format) {
+            case CSV -> {
+                for (int i = 0; i < columns.size(); i++) {
+                    if (i > 0) w.write(',');
+                    csv(w, columns.get(i).title());
+                }
+                w.write('\n');
+            }
+            case TEXT -> {
+                w.write(title);
+                w.write('\n');
+                w.write("=".repeat(80));
+                w.write("\n\n");
+            }
+            case JSONL -> {
+                // Self-describing lines; no header
+            }
+        }
+    }
+
+    private static void writeRow(Writer w, Format format, List<? extends Column<?>> columns, String[] values) throws IOException {
+        switch (format) {
+            case CSV -> {
+                for (int i = 0; i < values.length; i++) {
+                    if (i > 0) w.write(',');
+                    csv(w, values[i]);
+                }
+            }
+            case JSONL -> {
+                w.write('{');
+                for (int i = 0; i < values.length; i++) {
+                    if (i > 0) w.write(',');
+                    json(w, columns.get(i).key());
+                    w.write(':');
+                    json(w, values[i]);
+                }
+                w.write('}');
+            }
+            case TEXT -> {
+                for (int i = 0; i < values.length; i++) {
+                    if (i > 0) w.write("  ");
+                    w.write(values[i].replace('\n', ' ').replace('\r', ' '));
+                }
+            }
+        }
+        w.write('\n');
+    }
+
+    private static void csv(Writer w, String s) throws IOException {
+        w.write('"');
+        w.write(s.replace("\"", "\"\""));
+        w.write('"');
+    }
+
+    private static void json(Writer w, String s) throws IOException {
+        w.write('"');
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            switch (c) {
+                case '"' -> w.write("\\\"");
+                case '\\' -> w.write("\\\\");
+                case '\n' -> w.write("\\n");
+                case '\r' -> w.write("\\r");
+                case '\t' -> w.write("\\t");
+                default -> {
+                    if (c < 0x20) w.write(String.format("\\u%04x", (int) c));
+                    else w.write(c);
+                }
+            }
+        }
+        w.write('"');
+    }
+}
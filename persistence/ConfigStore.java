@@ -28,6 +28,11 @@ public class ConfigStore {
         return new ConfigStore(configPath);
     }
 
+    /** Directory holding the config file; other per-user app data lives next to it. */
+    public Path getConfigDir() {
+        return configFile.toAbsolutePath().getParent();
+    }
+
     private static Path getDefaultConfigPath() {
         String os = System.getProperty("os.name").toLowerCase();
         if (os.contains("win")) {
@@ -46,7 +51,10 @@ public class ConfigStore {
         }
         try {
             String json = Files.readString(configFile, StandardCharsets.UTF_8);
-            data = parseSimpleJson(json);
+            // Start from defaults so keys added in newer versions get sane values
+            Map<String, String> loaded = getDefaults();
+            loaded.putAll(parseSimpleJson(json));
+            data = loaded;
         } catch (IOException e) {
             data = getDefaults();
         }
@@ -74,6 +82,14 @@ public class ConfigStore {
         set(key, String.valueOf(value));
     }
 
+    public int getInt(String key, int defaultValue) {
+        try {
+            return Integer.parseInt(get(key).trim());
+        } catch (NumberFormatException e) {
+            return defaultValue;
+        }
+    }
+
     private Map<String, String> getDefaults() {
         Map<String, String> defaults = new HashMap<>();
         defaults.put("platformToolsPath", "");
@@ -81,6 +97,17 @@ public class ConfigStore {
         defaults.put("autoUpdatePlatformTools", "true");
         defaults.put("oemPackSource", "local");
         defaults.put("telemetryOptIn", "false");
+        defaults.put("adbShellSession", "true");
+        defaults.put("adbTransport", "cli");
+        defaults.put("adbPerDevicePermits", "2");
+        defaults.put("adbGlobalPermits", "8");
+        defaults.put("adbCacheTtlSeconds", "30");
+        defaults.put("adbCacheMaxEntries", "256");
+        defaults.put("jfrRecording", "false");
+        defaults.put("packageScanMode", "list");
+        defaults.put("historyCapacity", "100000");
+        defaults.put("historySegmentKb", "1024");
+        defaults.put("historyMaxSegments", "8");
         return defaults;
     }
 
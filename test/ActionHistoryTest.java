@@ -0,0 +1,174 @@
+import core.ActionHistory;
+import core.HistoryJournal;
+import core.HistoryQuery;
+import org.junit.jupiter.api.Test;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/** Ring-buffer backed history: bounded size, order and round-tripped fields. */
+public class ActionHistoryTest {
+
+    @Test
+    void keepsNewestEntriesUpToCapacity() {
+        ActionHistory history = new ActionHistory(1500);
+        for (int i = 0; i < 4000; i++) {
+            history.log("S" + (i % 3), i % 2 == 0 ? "DISABLE" : "UNINSTALL", "com.example.app" + (i % 50), i % 5 == 0 ? -1 : 0, i);
+        }
+        assertEquals(1500, history.size());
+        List<ActionHistory.Entry> entries = history.getEntries();
+        assertEquals(1500, entries.size());
+
+        ActionHistory.Entry first = entries.get(0);
+        assertEquals("S" + (2500 % 3), first.getSerial());
+        assertEquals("DISABLE", first.getAction());
+        assertEquals("com.example.app0", first.getDetails());
+        assertEquals(-1, first.getExitCode());
+        assertFalse(first.isSuccess());
+        assertEquals(2500L, first.getDurationMs());
+
+        ActionHistory.Entry last = entries.get(1499);
+        assertEquals("UNINSTALL", last.getAction());
+        assertEquals("com.example.app49", last.getDetails());
+        assertTrue(last.isSuccess());
+        assertEquals(3999L, last.getDurationMs());
+        assertEquals(last, history.getObservableEntries().get(1499));
+
+        history.clear();
+        assertTrue(history.getEntries().isEmpty());
+        history.log("done", "", true);
+        assertEquals("done", history.getEntries().get(0).getAction());
+    }
+
+    @Test
+    void keepsEntriesIntactAcrossDictionaryCompaction() {
+        // Every entry has new strings, so the ring's dictionaries are compacted many times over
+        ActionHistory history = new ActionHistory(100);
+        for (int i = 0; i < 20_000; i++) {
+            history.log("S" + i, "ACTION" + (i % 1000), "com.example.app" + i, i % 7, i);
+        }
+        List<ActionHistory.Entry> entries = history.getEntries();
+        assertEquals(100, entries.size());
+        for (int i = 0; i < 100; i++) {
+            int n = 19_900 + i;
+            ActionHistory.Entry e = entries.get(i);
+            assertEquals("S" + n, e.getSerial());
+            assertEquals("ACTION" + (n % 1000), e.getAction());
+            assertEquals("com.example.app" + n, e.getDetails());
+            assertEquals(n % 7, e.getExitCode());
+            assertEquals(n, e.getDurationMs());
+        }
+    }
+
+    @Test
+    void queriesPersistedHistoryBeyondCapacity() throws Exception {
+        Path dir = Files.createTempDirectory("history");
+        long t0 = 1_700_000_000_000L;
+        try (HistoryJournal journal = new HistoryJournal(dir, 64L * 1024 * 1024, 8)) {
+            // One action a minute on 4 devices and 500 packages
+            for (int i = 0; i < 60_000; i++) {
+                journal.append(new ActionHistory.Entry(t0 + i * 60_000L, "S" + (i % 4), "DISABLE", "com.app" + (i % 500), 0, 5));
+            }
+        }
+        ActionHistory history = new ActionHistory(1000);
+        try (HistoryJournal journal = new HistoryJournal(dir)) {
+            history.attachJournal(journal);
+        }
+        assertEquals(1000, history.size());
+
+        List<ActionHistory.Entry> pkg = history.query(new HistoryQuery("com.app7", null, Long.MIN_VALUE, Long.MAX_VALUE));
+        assertEquals(120, pkg.size());
+        assertEquals(t0 + 7 * 60_000L, pkg.get(0).getTimeMillis());
+
+        // com.app7 is logged at i = 7 + 500k, which is on device S3 for every k
+        assertEquals(120, history.query(new HistoryQuery("com.app7", "S3", Long.MIN_VALUE, Long.MAX_VALUE)).size());
+        assertTrue(history.query(new HistoryQuery("com.app7", "S0", Long.MIN_VALUE, Long.MAX_VALUE)).isEmpty());
+        assertTrue(history.query(new HistoryQuery("com.nope", null, Long.MIN_VALUE, Long.MAX_VALUE)).isEmpty());
+
+        // Time range [i=100, i=250) across bucket boundaries
+        List<ActionHistory.Entry> range = history.query(new HistoryQuery(null, null, t0 + 100 * 60_000L, t0 + 250 * 60_000L));
+        assertEquals(150, range.size());
+        assertEquals("com.app100", range.get(0).getDetails());
+        assertEquals(38, history.query(new HistoryQuery(null, "S1", t0 + 100 * 60_000L, t0 + 250 * 60_000L)).size());
+        assertEquals(60_000, history.query(HistoryQuery.ANY).size());
+
+        // Clearing the list keeps the saved history
+        history.clear();
+        assertEquals(0, history.size());
+        assertEquals(120, history.query(new HistoryQuery("com.app7", null, Long.MIN_VALUE, Long.MAX_VALUE)).size());
+    }
+
+    @Test
+    void queriesMatchJournalAfterPruning() throws Exception {
+        Path dir = Files.createTempDirectory("history");
+        ActionHistory history = new ActionHistory(50);
+        try (HistoryJournal journal = new HistoryJournal(dir, 4096, 3)) {
+            history.attachJournal(journal);
+            for (int i = 0; i < 2000; i++) {
+                history.log("S" + (i % 2), "DISABLE", "com.app" + i, 0, 1);
+                if (i % 25 == 0) journal.flush().join();
+            }
+            journal.flush().join();
+            List<ActionHistory.Entry> persisted = journal.replay();
+            assertTrue(persisted.size() < 2000);
+            List<ActionHistory.Entry> all = history.query(HistoryQuery.ANY);
+            assertEquals(persisted.size(), all.size());
+            assertEquals(persisted.get(0), all.get(0));
+            assertTrue(history.query(HistoryQuery.of("com.app0", null, Long.MIN_VALUE)).isEmpty());
+        }
+        // A later session sees the same
+        ActionHistory next = new ActionHistory(50);
+        try (HistoryJournal journal = new HistoryJournal(dir, 4096, 3)) {
+            next.attachJournal(journal);
+            assertEquals(journal.replay().size(), next.query(HistoryQuery.ANY).size());
+        }
+    }
+
+    @Test
+    void deleteSavedRemovesTheJournal() throws Exception {
+        Path dir = Files.createTempDirectory("history");
+        ActionHistory history = new ActionHistory(100);
+        try (HistoryJournal journal = new HistoryJournal(dir)) {
+            history.attachJournal(journal);
+            for (int i = 0; i < 10; i++) history.log("S1", "DISABLE", "com.app" + i, 0, 1);
+            history.clear();
+            journal.flush().join();
+            assertEquals(10, journal.replay().size());
+
+            history.deleteSaved();
+            assertTrue(history.query(HistoryQuery.ANY).isEmpty());
+            assertTrue(journal.replay().isEmpty());
+        }
+    }
+
+    @Test
+    void addsBatchesLargerThanCapacity() {
+        ActionHistory history = new ActionHistory(100);
+        history.log("S1", "DISABLE", "com.first", 0, 1);
+        List<ActionHistory.Entry> batch = new ArrayList<>();
+        for (int i = 0; i < 250; i++) batch.add(new ActionHistory.Entry(i, "S1", "DISABLE", "com.app" + i, 0, 1));
+        history.addAll(batch);
+        assertEquals(100, history.size());
+        assertEquals("com.app150", history.getEntries().get(0).getDetails());
+        assertEquals("com.app249", history.getEntries().get(99).getDetails());
+        // No journal: only what the view holds is searchable
+        assertTrue(history.query(HistoryQuery.of("com.first", null, Long.MIN_VALUE)).isEmpty());
+        assertEquals(100, history.query(HistoryQuery.ANY).size());
+    }
+
+    @Test
+    void indexStaysBoundedWithoutJournal() {
+        ActionHistory history = new ActionHistory(500);
+        for (int i = 0; i < 200_000; i++) history.log("S" + (i % 3), "DISABLE", "com.app" + i, 0, 1);
+        List<ActionHistory.Entry> all = history.query(HistoryQuery.ANY);
+        assertEquals(500, all.size());
+        assertEquals("com.app199500", all.get(0).getDetails());
+        assertEquals(history.getEntries().get(0), all.get(0));
+        assertTrue(history.query(HistoryQuery.of("com.app199499", null, Long.MIN_VALUE)).isEmpty());
+        assertEquals(1, history.query(HistoryQuery.of("com.app199999", "S1", Long.MIN_VALUE)).size());
+    }
+}
@@ -0,0 +1,65 @@
+import core.AdbResultCache;
+import core.AdbResultCache.Kind;
+import core.AdbRunner;
+import core.CommandResult;
+import core.PackageScanner;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/** Classification of shell commands for the read-only result cache. */
+public class AdbResultCacheTest {
+
+    private static Kind classify(String command) {
+        return AdbResultCache.classify("-s", "R58M", "shell", command);
+    }
+
+    @Test
+    void classifiesSimpleAndCompoundCommands() {
+        assertEquals(Kind.READ_ONLY, classify("getprop ro.product.model"));
+        assertEquals(Kind.READ_ONLY, classify("pm list packages -f"));
+        assertEquals(Kind.READ_ONLY, classify("echo a; dumpsys package com.x && getprop ro.build.id"));
+        assertEquals(Kind.MUTATING, classify("pm disable-user --user 0 com.x"));
+        assertEquals(Kind.MUTATING, classify("cmd package uninstall -k --user 0 com.x"));
+        assertEquals(Kind.MUTATING, classify("getprop x; pm enable com.x"));
+        assertEquals(Kind.OTHER, classify("settings put global x 1"));
+        assertEquals(Kind.OTHER, AdbResultCache.classify("devices", "-l"));
+    }
+
+    @Test
+    void redirectionsPipesAndSubstitutionsAreNeverReadOnly() {
+        assertEquals(Kind.OTHER, classify("echo x > /data/local/tmp/f"));
+        assertEquals(Kind.OTHER, classify("dumpsys package >> /sdcard/pkg.txt"));
+        assertEquals(Kind.OTHER, classify("getprop < /data/local/tmp/in"));
+        assertEquals(Kind.OTHER, classify("pm list packages | grep google"));
+        assertEquals(Kind.OTHER, classify("echo `id`"));
+        assertEquals(Kind.OTHER, classify("getprop $(cat /data/local/tmp/name)"));
+        assertEquals(Kind.MUTATING, classify("getprop $(pm disable-user com.x)"));
+        assertEquals(Kind.MUTATING, classify("echo `pm uninstall com.x`"));
+        assertEquals(Kind.MUTATING, classify("pm list packages -d | pm enable com.x"));
+    }
+
+    @Test
+    void stateScanCommandIsCacheable() {
+        List<String[]> commands = new ArrayList<>();
+        AdbRunner fake = new AdbRunner("adb") {
+            @Override
+            public CommandResult stream(Consumer<String> onLine, String... args) {
+                commands.add(args);
+                return new CommandResult(0, "", "");
+            }
+        };
+        new PackageScanner(fake).listPackages("S1");
+        assertEquals(1, commands.size());
+        assertEquals(Kind.READ_ONLY, AdbResultCache.classify(commands.get(0)));
+
+        assertEquals(Kind.READ_ONLY, classify("pm list packages -f --show-versioncode 2>/dev/null || pm list packages -f"));
+        assertEquals(Kind.READ_ONLY, classify("dumpsys package com.x 2>&1"));
+        assertEquals(Kind.OTHER, classify("dumpsys package 2>/data/local/tmp/err"));
+        assertEquals(Kind.MUTATING, classify("pm disable-user com.x >/dev/null || pm enable com.y"));
+    }
+}
@@ -0,0 +1,73 @@
+import core.AdbScheduler;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/** Per-device and global permits, and draining on close. */
+public class AdbSchedulerTest {
+
+    @Test
+    void capsConcurrencyPerDeviceAndGlobally() {
+        AtomicInteger running = new AtomicInteger();
+        AtomicInteger maxRunning = new AtomicInteger();
+        Map<String, AtomicInteger> perDevice = new ConcurrentHashMap<>();
+        Map<String, AtomicInteger> maxPerDevice = new ConcurrentHashMap<>();
+        try (AdbScheduler scheduler = new AdbScheduler(2, 3)) {
+            List<CompletableFuture<Integer>> futures = new ArrayList<>();
+            for (int i = 0; i < 60; i++) {
+                String serial = "S" + (i % 3);
+                futures.add(scheduler.submit(serial, () -> {
+                    int device = perDevice.computeIfAbsent(serial, s -> new AtomicInteger()).incrementAndGet();
+                    maxPerDevice.computeIfAbsent(serial, s -> new AtomicInteger()).accumulateAndGet(device, Math::max);
+                    maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+                    try {
+                        Thread.sleep(5);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                    running.decrementAndGet();
+                    perDevice.get(serial).decrementAndGet();
+                    return 1;
+                }));
+            }
+            assertEquals(60, futures.stream().mapToInt(CompletableFuture::join).sum());
+        }
+        assertTrue(maxRunning.get() <= 3, "global: " + maxRunning.get());
+        assertTrue(maxRunning.get() >= 2, "expected parallelism, got " + maxRunning.get());
+        for (AtomicInteger max : maxPerDevice.values()) assertTrue(max.get() <= 2, "per device: " + max.get());
+    }
+
+    @Test
+    void closeLetsRunningWorkFinish() throws Exception {
+        AdbScheduler scheduler = new AdbScheduler();
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        CompletableFuture<String> nested = new CompletableFuture<>();
+        scheduler.execute(() -> {
+            started.countDown();
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                nested.completeExceptionally(e);
+                return;
+            }
+            // Follow-up work submitted after close still runs
+            scheduler.submit("S1", () -> "done").thenAccept(nested::complete);
+        });
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+        scheduler.close();
+        assertFalse(scheduler.drained().isDone());
+        release.countDown();
+        assertEquals("done", nested.get(5, TimeUnit.SECONDS));
+        scheduler.drained().get(5, TimeUnit.SECONDS);
+    }
+}
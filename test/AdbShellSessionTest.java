@@ -0,0 +1,62 @@
+import core.AdbRunner;
+import core.CommandResult;
+import org.junit.jupiter.api.Test;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/** Shell-session mode against a fake adb that is just a local sh. */
+public class AdbShellSessionTest {
+
+    /** An "adb" that ignores `-s <serial> shell` and runs a shell reading stdin. */
+    private static String fakeAdb() throws Exception {
+        Path script = Files.createTempFile("fake-adb", ".sh");
+        Files.writeString(script, "#!/bin/sh\nexec sh\n");
+        Files.setPosixFilePermissions(script, PosixFilePermissions.fromString("rwx------"));
+        return script.toString();
+    }
+
+    @Test
+    void framesOutputAndExitCodes() throws Exception {
+        AdbRunner runner = new AdbRunner(fakeAdb(), true);
+        try {
+            CommandResult ok = runner.run("-s", "S1", "shell", "echo one; echo two");
+            assertEquals(0, ok.exitCode());
+            assertEquals("one\ntwo\n", ok.stdout());
+
+            // No trailing newline: the output shares a line with the sentinel
+            CommandResult partial = runner.run("-s", "S1", "shell", "printf tail; exit 3");
+            assertEquals(3, partial.exitCode());
+            assertEquals("tail\n", partial.stdout());
+
+            // exit/cd run in a subshell and don't end the session
+            CommandResult after = runner.run("-s", "S1", "shell", "pwd; cd /; exit 0");
+            assertEquals(0, after.exitCode());
+            List<String> lines = new ArrayList<>();
+            assertEquals(0, runner.stream(lines::add, "-s", "S1", "shell", "echo", "$((6", "*", "7))").exitCode());
+            assertEquals(List.of("42"), lines);
+        } finally {
+            runner.close();
+        }
+    }
+
+    @Test
+    void silentCommandTimesOutWithoutRerun() throws Exception {
+        AdbRunner runner = new AdbRunner(fakeAdb(), true);
+        runner.setIdleTimeout(300);
+        try {
+            long start = System.nanoTime();
+            CommandResult hung = runner.run("-s", "S1", "shell", "sleep 5");
+            long ms = (System.nanoTime() - start) / 1_000_000;
+            assertNotEquals(0, hung.exitCode());
+            assertTrue(ms < 3000, "took " + ms + " ms");
+        } finally {
+            runner.close();
+        }
+    }
+}
@@ -0,0 +1,209 @@
+import core.AdbSocketRunner;
+import core.CommandResult;
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/** Runs AdbSocketRunner against an in-process fake adb server. */
+public class AdbSocketRunnerTest {
+
+    /** Minimal adb server: answers host:devices-l and shell,v2 on one transport. */
+    static class FakeAdbServer implements AutoCloseable {
+        final ServerSocketChannel server;
+        final List<String> requests = Collections.synchronizedList(new ArrayList<>());
+        final Thread thread;
+
+        FakeAdbServer() throws IOException {
+            server = ServerSocketChannel.open();
+            server.bind(new InetSocketAddress("127.0.0.1", 0));
+            thread = new Thread(this::serve, "fake-adb-server");
+            thread.setDaemon(true);
+            thread.start();
+        }
+
+        InetSocketAddress address() throws IOException {
+            return (InetSocketAddress) server.getLocalAddress();
+        }
+
+        private void serve() {
+            while (server.isOpen()) {
+                try (SocketChannel ch = server.accept()) {
+                    handle(ch);
+                } catch (IOException ignored) {
+                    // closed
+                }
+            }
+        }
+
+        private void handle(SocketChannel ch) throws IOException {
+            while (true) {
+                String req = readRequest(ch);
+                requests.add(req);
+                if (req.equals("host:devices-l")) {
+                    write(ch, "OKAY");
+                    String body = "emulator-5554          device product:sdk model:Pixel_7 device:emu transport_id:3\n";
+                    write(ch, String.format("%04x", body.length()) + body);
+                    return;
+                } else if (req.startsWith("host:transport:")) {
+                    if (!req.endsWith("emulator-5554")) {
+                        String msg = "device not found";
+                        write(ch, "FAIL" + String.format("%04x", msg.length()) + msg);
+                        return;
+                    }
+                    write(ch, "OKAY");
+                } else if (req.startsWith("shell,v2,raw:")) {
+                    write(ch, "OKAY");
+                    String cmd = req.substring("shell,v2,raw:".length());
+                    if (cmd.contains("hang")) {
+                        // Wedged transport: nothing until the client gives up
+                        ch.read(ByteBuffer.allocate(1));
+                        return;
+                    }
+                    if (cmd.contains("drop")) return;
+                    if (cmd.equals("split")) {
+                        // Lines and a multi-byte character split across packets, CRLF, no final newline
+                        byte[] out = "first\r\ncaf\u00e9 line\nlast".getBytes(StandardCharsets.UTF_8);
+                        int cut = "first\r\ncaf".length() + 1;
+                        packet(ch, 1, Arrays.copyOfRange(out, 0, 3));
+                        packet(ch, 1, Arrays.copyOfRange(out, 3, cut));
+                        packet(ch, 2, Arrays.copyOfRange(out, cut, out.length));
+                        packet(ch, 3, new byte[]{0});
+                        return;
+                    }
+                    packet(ch, 1, ("ran " + cmd + "\n").getBytes(StandardCharsets.UTF_8));
+                    packet(ch, 2, "warn\n".getBytes(StandardCharsets.UTF_8));
+                    packet(ch, 3, new byte[]{(byte) (cmd.contains("fail") ? 4 : 0)});
+                    return;
+                } else {
+                    return;
+                }
+            }
+        }
+
+        private static String readRequest(SocketChannel ch) throws IOException {
+            int len = Integer.parseInt(new String(read(ch, 4), StandardCharsets.US_ASCII), 16);
+            return new String(read(ch, len), StandardCharsets.UTF_8);
+        }
+
+        private static byte[] read(SocketChannel ch, int n) throws IOException {
+            ByteBuffer b = ByteBuffer.allocate(n);
+            while (b.hasRemaining()) if (ch.read(b) < 0) throw new IOException("eof");
+            return b.array();
+        }
+
+        private static void write(SocketChannel ch, String s) throws IOException {
+            ch.write(ByteBuffer.wrap(s.getBytes(StandardCharsets.UTF_8)));
+        }
+
+        private static void packet(SocketChannel ch, int id, byte[] data) throws IOException {
+            ByteBuffer b = ByteBuffer.allocate(5 + data.length).order(ByteOrder.LITTLE_ENDIAN);
+            b.put((byte) id).putInt(data.length).put(data).flip();
+            while (b.hasRemaining()) ch.write(b);
+        }
+
+        @Override
+        public void close() throws IOException {
+            server.close();
+        }
+    }
+
+    @Test
+    void listsDevicesOverHostProtocol() throws Exception {
+        try (FakeAdbServer fake = new FakeAdbServer()) {
+            AdbSocketRunner runner = new AdbSocketRunner("adb", fake.address());
+            CommandResult res = runner.run("devices", "-l");
+            assertTrue(res.isSuccess());
+            assertTrue(res.stdout().startsWith("List of devices attached\n"));
+            assertTrue(res.stdout().contains("emulator-5554"));
+            assertEquals(List.of("host:devices-l"), fake.requests);
+        }
+    }
+
+    @Test
+    void runsShellCommandWithExitCode() throws Exception {
+        try (FakeAdbServer fake = new FakeAdbServer()) {
+            AdbSocketRunner runner = new AdbSocketRunner("adb", fake.address());
+            CommandResult ok = runner.run("-s", "emulator-5554", "shell", "pm", "list", "packages");
+            assertEquals(0, ok.exitCode());
+            assertEquals("ran pm list packages\nwarn\n", ok.stdout());
+
+            CommandResult failed = runner.run("-s", "emulator-5554", "shell", "fail");
+            assertEquals(4, failed.exitCode());
+            assertEquals(List.of("host:transport:emulator-5554", "shell,v2,raw:pm list packages",
+                    "host:transport:emulator-5554", "shell,v2,raw:fail"), fake.requests);
+        }
+    }
+
+    @Test
+    void timesOutAndDoesNotRerunSentCommands() throws Exception {
+        try (FakeAdbServer fake = new FakeAdbServer()) {
+            AdbSocketRunner runner = new AdbSocketRunner("/nonexistent/adb", fake.address());
+            runner.setIdleTimeout(300);
+            long start = System.nanoTime();
+            CommandResult hung = runner.run("-s", "emulator-5554", "shell", "dumpsys", "hang");
+            assertTrue((System.nanoTime() - start) / 1_000_000 < 3000);
+            assertEquals(-1, hung.exitCode());
+            assertTrue(hung.stderr().contains("No data"), hung.stderr());
+
+            // Connection lost after a mutation was sent: fail rather than run it again via the CLI
+            CommandResult dropped = runner.run("-s", "emulator-5554", "shell", "pm", "uninstall", "drop");
+            assertEquals(-1, dropped.exitCode());
+            assertFalse(dropped.stderr().contains("/nonexistent/adb"), dropped.stderr());
+
+            // A read-only command that printed nothing may be retried
+            CommandResult retried = runner.run("-s", "emulator-5554", "shell", "getprop", "drop");
+            assertEquals(-1, retried.exitCode());
+            assertTrue(retried.stderr().contains("/nonexistent/adb"), retried.stderr());
+        }
+    }
+
+    @Test
+    void streamsLinesSplitAcrossPackets() throws Exception {
+        try (FakeAdbServer fake = new FakeAdbServer()) {
+            AdbSocketRunner runner = new AdbSocketRunner("adb", fake.address());
+            List<String> lines = new ArrayList<>();
+            CommandResult res = runner.stream(lines::add, "-s", "emulator-5554", "shell", "split");
+            assertEquals(0, res.exitCode());
+            assertEquals(List.of("first", "caf\u00e9 line", "last"), lines);
+        }
+    }
+
+    @Test
+    void reportsTheTransportThatRanEachCommand() throws Exception {
+        InetSocketAddress down;
+        try (ServerSocketChannel closed = ServerSocketChannel.open()) {
+            closed.bind(new InetSocketAddress("127.0.0.1", 0));
+            down = (InetSocketAddress) closed.getLocalAddress();
+        }
+        Path file = Files.createTempFile("adb", ".jfr");
+        try (FakeAdbServer fake = new FakeAdbServer(); Recording recording = new Recording()) {
+            recording.enable("uadb.AdbCommand");
+            recording.start();
+            new AdbSocketRunner("/nonexistent/adb", fake.address()).run("-s", "emulator-5554", "shell", "pm", "list", "packages");
+            // No server: the command falls back to spawning the (missing) CLI
+            new AdbSocketRunner("/nonexistent/adb", down).run("-s", "emulator-5554", "shell", "pm", "list", "packages");
+            recording.stop();
+            recording.dump(file);
+        }
+        List<String> transports = new ArrayList<>();
+        for (RecordedEvent e : RecordingFile.readAllEvents(file)) transports.add(e.getString("transport"));
+        assertEquals(List.of("socket", "spawn"), transports);
+    }
+}
@@ -1,10 +1,13 @@
 import core.AdbRunner;
 import core.CommandResult;
+import core.DeviceInfo;
 import core.DeviceManager;
 import org.junit.jupiter.api.Test;
 
 import java.lang.reflect.Field;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
 
 import static org.junit.jupiter.api.Assertions.*;
 
@@ -29,4 +32,92 @@ public class DeviceManagerTest {
         assertTrue(serials.contains("emulator-5554"));
         assertTrue(serials.contains("ABCD1234"));
     }
+
+    @Test
+    void parsesGetpropDumpWithMultiLineValues() {
+        String dump = "[ro.product.manufacturer]: [samsung]\r\n" +
+                "[ro.product.model]: [SM-S911B]\n" +
+                "\n" +
+                "[persist.sys.motd]: [first line\n" +
+                "second line]\n" +
+                "[ro.build.version.release]: [14]\n" +
+                "[ro.empty]: []\n" +
+                "garbage line\n";
+        Map<String, String> props = DeviceManager.parseGetprop(dump);
+        assertEquals("samsung", props.get("ro.product.manufacturer"));
+        assertEquals("SM-S911B", props.get("ro.product.model"));
+        assertEquals("first line\nsecond line", props.get("persist.sys.motd"));
+        assertEquals("14", props.get("ro.build.version.release"));
+        assertEquals("", props.get("ro.empty"));
+        assertEquals(5, props.size());
+    }
+
+    @Test
+    void deviceInfoUsesOneGetpropCallAndCachesIt() {
+        List<String> calls = new ArrayList<>();
+        AdbRunner fake = new AdbRunner("adb") {
+            @Override
+            public CommandResult run(String... args) {
+                calls.add(String.join(" ", args));
+                return new CommandResult(0, "[ro.product.manufacturer]: [Google]\n" +
+                        "[ro.product.model]: [Pixel 8]\n" +
+                        "[ro.build.version.release]: [15]\n" +
+                        "[ro.build.version.sdk]: [35]\n", "");
+            }
+        };
+        DeviceManager dm = new DeviceManager(fake);
+        DeviceInfo info = dm.getDeviceInfo("S1");
+        assertEquals("Google", info.manufacturer());
+        assertEquals("Pixel 8", info.model());
+        assertEquals("15", info.androidVersion());
+        assertEquals("35", dm.getProp("S1", "ro.build.version.sdk"));
+        assertEquals(List.of("-s S1 shell getprop"), calls);
+
+        // A detached device is read afresh when it comes back
+        dm.invalidateProperties("S1");
+        assertEquals("", dm.getListedDevice("S1").manufacturer());
+        assertEquals("Google", dm.getDeviceInfo("S1").manufacturer());
+        assertEquals(2, calls.size());
+    }
+
+    @Test
+    void fallsBackToSingleGetpropWhenDumpIsUnparseable() {
+        List<String> calls = new ArrayList<>();
+        AdbRunner fake = new AdbRunner("adb") {
+            @Override
+            public CommandResult run(String... args) {
+                calls.add(String.join(" ", args));
+                if (args.length == 4) return new CommandResult(0, "not a property dump\n", "");
+                return new CommandResult(0, args[4] + "-value\n", "");
+            }
+        };
+        DeviceInfo info = new DeviceManager(fake).getDeviceInfo("S1");
+        assertEquals("ro.product.manufacturer-value", info.manufacturer());
+        assertEquals("ro.build.version.release-value", info.androidVersion());
+        assertEquals(4, calls.size());
+    }
+
+    @Test
+    void parsesRichDeviceListing() {
+        String sample = "List of devices attached\n" +
+                "emulator-5554          device product:sdk_gphone64_x86_64 model:Android_SDK_built_for_x86_64 device:emu64xa transport_id:1\n" +
+                "R58N12ABCDE            unauthorized usb:1-1 transport_id:4\n" +
+                "0123456789             no permissions (missing udev rules? user is in the plugdev group); see [http://developer.android.com/tools/device.html] usb:1-2 transport_id:5\n";
+        List<DeviceInfo> devices = DeviceManager.parseDeviceListing(sample);
+        assertEquals(3, devices.size());
+
+        DeviceInfo emu = devices.get(0);
+        assertEquals("emulator-5554", emu.serial());
+        assertTrue(emu.isReady());
+        assertEquals("Android SDK built for x86 64", emu.model());
+        assertEquals("sdk_gphone64_x86_64", emu.product());
+        assertEquals("emu64xa", emu.device());
+        assertEquals("1", emu.transportId());
+        assertEquals("Android SDK built for x86 64 (emulator-5554)", emu.displayName());
+
+        assertEquals("unauthorized", devices.get(1).state());
+        assertEquals("4", devices.get(1).transportId());
+        assertTrue(devices.get(2).state().startsWith("no permissions"));
+        assertEquals("5", devices.get(2).transportId());
+    }
 }
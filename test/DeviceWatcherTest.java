@@ -0,0 +1,146 @@
+import core.AdbRunner;
+import core.DeviceInfo;
+import core.DeviceWatcher;
+import core.DeviceWatcher.Change;
+import core.DeviceWatcher.DeviceEvent;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/** Device list diffing, track-devices-l parsing and reconnecting to the adb server. */
+public class DeviceWatcherTest {
+
+    private static final String PIXEL = "emulator-5554          device product:sdk_gphone64 model:Pixel_7 device:emu64 transport_id:3\n";
+    private static final String GALAXY = "R58M12345 unauthorized usb:1-1 transport_id:4\n";
+
+    @Test
+    void parsesTrackDevicesPayload() {
+        Map<String, DeviceInfo> devices = DeviceWatcher.parseDevices(PIXEL + GALAXY
+                + "0123456789ABCDEF       no permissions (missing udev rules?) usb:1-2 transport_id:5\n");
+        assertEquals(List.of("emulator-5554", "R58M12345", "0123456789ABCDEF"), List.copyOf(devices.keySet()));
+        DeviceInfo pixel = devices.get("emulator-5554");
+        assertEquals("device", pixel.state());
+        assertEquals("Pixel 7", pixel.model());
+        assertEquals("sdk_gphone64", pixel.product());
+        assertEquals("3", pixel.transportId());
+        assertEquals("unauthorized", devices.get("R58M12345").state());
+        assertEquals("no permissions (missing udev rules?)", devices.get("0123456789ABCDEF").state());
+        assertTrue(DeviceWatcher.parseDevices("").isEmpty());
+    }
+
+    @Test
+    void diffReportsAttachDetachAndStateChange() {
+        Map<String, DeviceInfo> before = DeviceWatcher.parseDevices(PIXEL + GALAXY);
+        Map<String, DeviceInfo> after = DeviceWatcher.parseDevices(
+                "R58M12345 device usb:1-1 product:a52q model:SM_A525F transport_id:4\n"
+                        + "192.168.1.20:5555 device product:foo model:Tab transport_id:6\n");
+
+        List<DeviceEvent> events = DeviceWatcher.diff(before, after);
+        assertEquals(3, events.size());
+        DeviceEvent changed = events.get(0);
+        assertEquals(Change.STATE_CHANGED, changed.change());
+        assertEquals("R58M12345", changed.serial());
+        assertEquals("unauthorized", changed.previousState());
+        assertEquals("device", changed.state());
+        assertEquals("SM A525F", changed.device().model());
+        assertEquals(Change.ATTACHED, events.get(1).change());
+        assertEquals("192.168.1.20:5555", events.get(1).serial());
+        DeviceEvent gone = events.get(2);
+        assertEquals(Change.DETACHED, gone.change());
+        assertEquals("emulator-5554", gone.serial());
+        assertNull(gone.state());
+        assertEquals("Pixel 7", gone.device().model());
+
+        assertTrue(DeviceWatcher.diff(after, after).isEmpty());
+    }
+
+    @Test
+    void reconnectsAndDiffsAgainstLastKnownList() throws Exception {
+        // First connection lists one device then drops; the second lists two
+        try (TrackDevicesServer fake = new TrackDevicesServer(List.of(List.of(PIXEL), List.of(PIXEL + GALAXY)))) {
+            BlockingQueue<DeviceEvent> events = new LinkedBlockingQueue<>();
+            try (DeviceWatcher watcher = new DeviceWatcher(new AdbRunner("adb"), fake.address(), events::add)) {
+                watcher.start();
+                DeviceEvent first = events.poll(5, TimeUnit.SECONDS);
+                assertNotNull(first);
+                assertEquals(Change.ATTACHED, first.change());
+                assertEquals("emulator-5554", first.serial());
+
+                DeviceEvent second = events.poll(5, TimeUnit.SECONDS);
+                assertNotNull(second, "no event after reconnect");
+                assertEquals(Change.ATTACHED, second.change());
+                assertEquals("R58M12345", second.serial());
+                assertEquals("unauthorized", second.state());
+                assertNull(events.poll(200, TimeUnit.MILLISECONDS), "pixel must not be re-reported");
+            }
+            assertEquals(2, fake.connections);
+        }
+    }
+
+    /** Answers host:track-devices-l with one scripted list of payloads per connection, then closes it. */
+    static class TrackDevicesServer implements AutoCloseable {
+        final ServerSocketChannel server;
+        final List<List<String>> sessions;
+        volatile int connections;
+
+        TrackDevicesServer(List<List<String>> sessions) throws IOException {
+            this.sessions = sessions;
+            server = ServerSocketChannel.open();
+            server.bind(new InetSocketAddress("127.0.0.1", 0));
+            Thread thread = new Thread(this::serve, "fake-track-devices");
+            thread.setDaemon(true);
+            thread.start();
+        }
+
+        InetSocketAddress address() throws IOException {
+            return (InetSocketAddress) server.getLocalAddress();
+        }
+
+        private void serve() {
+            while (server.isOpen()) {
+                try (SocketChannel ch = server.accept()) {
+                    int session = connections++;
+                    ByteBuffer len = ByteBuffer.allocate(4);
+                    while (len.hasRemaining()) if (ch.read(len) < 0) throw new IOException("eof");
+                    ByteBuffer req = ByteBuffer.allocate(Integer.parseInt(new String(len.array(), StandardCharsets.US_ASCII), 16));
+                    while (req.hasRemaining()) if (ch.read(req) < 0) throw new IOException("eof");
+                    if (!"host:track-devices-l".equals(new String(req.array(), StandardCharsets.UTF_8))) continue;
+                    write(ch, "OKAY");
+                    if (session >= sessions.size()) {
+                        // Keep the last connection open until the watcher closes it
+                        ch.read(ByteBuffer.allocate(1));
+                        continue;
+                    }
+                    for (String payload : sessions.get(session)) {
+                        write(ch, String.format("%04x", payload.getBytes(StandardCharsets.UTF_8).length) + payload);
+                    }
+                    if (session == sessions.size() - 1) ch.read(ByteBuffer.allocate(1));
+                } catch (IOException ignored) {
+                    // closed
+                }
+            }
+        }
+
+        private static void write(SocketChannel ch, String s) throws IOException {
+            ByteBuffer b = ByteBuffer.wrap(s.getBytes(StandardCharsets.UTF_8));
+            while (b.hasRemaining()) ch.write(b);
+        }
+
+        @Override
+        public void close() throws IOException {
+            server.close();
+        }
+    }
+}
@@ -0,0 +1,77 @@
+import core.ActionHistory;
+import core.HistoryJournal;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/** History journal persistence, replay after a torn write, and rotation. */
+public class HistoryJournalTest {
+
+    private static ActionHistory.Entry entry(int i) {
+        return new ActionHistory.Entry(1_700_000_000_000L + i * 1000L, "R58M" + (i % 2), "DISABLE",
+                "com.example.app" + i + "\t\"x\"", i % 3 == 0 ? 0 : 1, i * 10L);
+    }
+
+    @Test
+    void replaysEntriesAndSkipsTornLine() throws Exception {
+        Path dir = Files.createTempDirectory("history");
+        try (HistoryJournal journal = new HistoryJournal(dir)) {
+            for (int i = 0; i < 50; i++) journal.append(entry(i));
+            journal.flush().join();
+        }
+        // Crash in the middle of a write
+        Path segment = dir.resolve("history-000001.jsonl");
+        Files.writeString(segment, "{\"time\":1700000000000,\"serial\":\"R5", StandardCharsets.UTF_8, StandardOpenOption.APPEND);
+
+        try (HistoryJournal journal = new HistoryJournal(dir)) {
+            List<ActionHistory.Entry> replayed = journal.replay();
+            assertEquals(50, replayed.size());
+            ActionHistory.Entry e = replayed.get(7);
+            assertEquals("R58M1", e.getSerial());
+            assertEquals("DISABLE", e.getAction());
+            assertEquals("com.example.app7\t\"x\"", e.getDetails());
+            assertEquals(1, e.getExitCode());
+            assertEquals(70L, e.getDurationMs());
+            assertEquals(entry(7), e);
+            assertTrue(replayed.get(9).isSuccess());
+
+            journal.append(entry(50));
+        }
+        try (HistoryJournal journal = new HistoryJournal(dir)) {
+            List<ActionHistory.Entry> replayed = journal.replay();
+            assertEquals(51, replayed.size());
+            assertEquals("com.example.app50\t\"x\"", replayed.get(50).getDetails());
+        }
+    }
+
+    @Test
+    void rotatesBySizeAndKeepsNewestSegments() throws Exception {
+        Path dir = Files.createTempDirectory("history");
+        try (HistoryJournal journal = new HistoryJournal(dir, 512, 3)) {
+            for (int i = 0; i < 200; i++) {
+                journal.append(entry(i));
+                if (i % 10 == 0) journal.flush().join();
+            }
+        }
+        try (Stream<Path> files = Files.list(dir)) {
+            long count = files.count();
+            assertTrue(count >= 2 && count <= 3, "segments: " + count);
+        }
+        try (HistoryJournal journal = new HistoryJournal(dir, 512, 3)) {
+            List<ActionHistory.Entry> replayed = journal.replay();
+            assertTrue(replayed.size() < 200);
+            assertEquals("com.example.app199\t\"x\"", replayed.get(replayed.size() - 1).getDetails());
+
+            journal.clear();
+            journal.flush().join();
+            assertTrue(journal.replay().isEmpty());
+        }
+    }
+}
@@ -0,0 +1,113 @@
+import core.AdbRunner;
+import core.CommandResult;
+import core.LabelResolver;
+import core.PackageInfo;
+import org.junit.jupiter.api.Test;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/** Label resolution against canned badging output and the on-disk cache. */
+public class LabelResolverTest {
+
+    @Test
+    void resolvesOnceAndServesLaterScansFromDisk() throws Exception {
+        Path dir = Files.createTempDirectory("labels");
+        Path file = dir.resolve(LabelResolver.CACHE_FILE);
+        AtomicInteger calls = new AtomicInteger();
+        AdbRunner fake = new AdbRunner("adb") {
+            @Override
+            public CommandResult stream(Consumer<String> onLine, String... args) {
+                if (isProbe(args)) {
+                    onLine.accept("/system/bin/aapt2");
+                    return new CommandResult(0, "", "");
+                }
+                calls.incrementAndGet();
+                String out = "::uadb-label com.samsung.android.bixby.agent\n" +
+                        "application-label:'Bixby Voice'\n" +
+                        "application: label='Bixby Voice' icon='res/mipmap/ic_launcher.png'\n" +
+                        "::uadb-label com.example.app\n";
+                out.lines().forEach(onLine);
+                return new CommandResult(0, "", "");
+            }
+        };
+        List<PackageInfo> pkgs = List.of(
+                PackageInfo.of("com.samsung.android.bixby.agent").withDetails(340600100L, -1, "", 0),
+                PackageInfo.of("com.example.app").withDetails(7L, -1, "", 0),
+                PackageInfo.of("com.unknown.version"));
+
+        Map<String, LabelResolver.Metadata> resolved = new LabelResolver(fake, file).resolve("S1", pkgs);
+        assertEquals(1, calls.get());
+        assertEquals(1, resolved.size());
+        assertEquals("Bixby Voice", resolved.get("com.samsung.android.bixby.agent").label());
+        assertEquals("res/mipmap/ic_launcher.png", resolved.get("com.samsung.android.bixby.agent").icon());
+
+        // A fresh resolver (next launch, other device) reads the file instead of the device
+        LabelResolver again = new LabelResolver(fake, file);
+        assertEquals("Bixby Voice", again.cached("com.samsung.android.bixby.agent", 340600100L).label());
+        assertNull(again.cached("com.samsung.android.bixby.agent", 340600200L));
+        again.resolve("S2", List.of(pkgs.get(0)));
+        assertEquals(1, calls.get());
+
+        // No label from badging: cached with the heuristic label, not retried
+        assertEquals(pkgs.get(1).label(), again.cached("com.example.app", 7L).label());
+        again.resolve("S2", List.of(pkgs.get(1)));
+        assertEquals(1, calls.get());
+    }
+
+    @Test
+    void splitsBatchesByScriptLength() throws Exception {
+        Path file = Files.createTempDirectory("labels").resolve(LabelResolver.CACHE_FILE);
+        List<Integer> lengths = new ArrayList<>();
+        AdbRunner fake = new AdbRunner("adb") {
+            @Override
+            public CommandResult stream(Consumer<String> onLine, String... args) {
+                if (isProbe(args)) onLine.accept("/data/local/tmp/aapt2");
+                else lengths.add(args[args.length - 1].length());
+                return new CommandResult(0, "", "");
+            }
+        };
+        List<PackageInfo> pkgs = new ArrayList<>();
+        for (int i = 0; i < 600; i++) {
+            pkgs.add(PackageInfo.of("com.example.vendor.long.package.name.number" + i).withDetails(1L, -1, "", 0));
+        }
+        LabelResolver resolver = new LabelResolver(fake, file);
+        assertTrue(resolver.resolve("S1", pkgs).isEmpty());
+        assertTrue(lengths.size() > 1);
+        for (int length : lengths) assertTrue(length <= 16 * 1024, "script length " + length);
+        assertEquals(600, resolver.size());
+    }
+
+    @Test
+    void probesForAaptOncePerDevice() throws Exception {
+        Path file = Files.createTempDirectory("labels").resolve(LabelResolver.CACHE_FILE);
+        List<String> scripts = new ArrayList<>();
+        AdbRunner fake = new AdbRunner("adb") {
+            @Override
+            public CommandResult stream(Consumer<String> onLine, String... args) {
+                scripts.add(args[args.length - 1]);
+                return new CommandResult(0, "", "");
+            }
+        };
+        LabelResolver resolver = new LabelResolver(fake, file);
+        List<PackageInfo> pkgs = List.of(PackageInfo.of("com.example.app").withDetails(7L, -1, "", 0));
+
+        // No binary on the device: no batch is built, and later scans don't probe again
+        assertTrue(resolver.resolve("S1", pkgs).isEmpty());
+        assertTrue(resolver.resolve("S1", pkgs).isEmpty());
+        assertEquals(1, scripts.size());
+        assertTrue(isProbe(new String[]{scripts.get(0)}));
+        assertNull(resolver.cached("com.example.app", 7L));
+    }
+
+    private static boolean isProbe(String[] args) {
+        return args[args.length - 1].startsWith("command -v aapt2");
+    }
+}
@@ -0,0 +1,70 @@
+import core.OemPack;
+import core.OemPackIndex;
+import core.Recommendation;
+import core.SimpleOemPackLoader;
+import org.junit.jupiter.api.Test;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/** Compiled pack index: lookups and rebuilds when the JSON changes. */
+public class OemPackIndexTest {
+
+    private static String pack(String reason) {
+        return "{\"packages\": [\n" +
+                "  {\"pkg\": \"com.samsung.android.bixby.agent\", \"recommendedAction\": \"disable\", \"risk\": \"low\", \"reason\": \"" + reason + "\"},\n" +
+                "  {\"pkg\": \"com.facebook.appmanager\", \"recommendedAction\": \"disable\", \"risk\": \"low\", \"reason\": \"Préinstallé\"},\n" +
+                "  {\"pkg\": \"com.android.settings\", \"recommendedAction\": \"keep\", \"risk\": \"high\", \"reason\": \"Core\"}\n" +
+                "]}\n";
+    }
+
+    @Test
+    void compilesMapsAndRebuildsOnChange() throws Exception {
+        Path dir = Files.createTempDirectory("packs");
+        Path json = dir.resolve("samsung.json");
+        Files.writeString(json, pack("Assistant"));
+
+        OemPack first = OemPackIndex.open(json);
+        assertTrue(Files.exists(OemPackIndex.indexPath(json)));
+        assertEquals(3, first.size());
+        assertEquals(Recommendation.of("disable", "low", "Assistant"), first.get("com.samsung.android.bixby.agent"));
+        assertEquals(Recommendation.of("disable", "low", "Préinstallé"), first.get("com.facebook.appmanager"));
+        assertEquals(Recommendation.of("keep", "high", "Core"), first.get("com.android.settings"));
+        assertSame(first.get("com.samsung.android.bixby.agent"), OemPack.of(Map.of("x", Recommendation.of("disable", "low", "Assistant"))).get("x"));
+        assertNull(first.get("com.android"));
+        assertNull(first.get("com.zzz"));
+
+        // Touching the JSON keeps the index (same CRC); editing it rebuilds
+        long built = Files.getLastModifiedTime(OemPackIndex.indexPath(json)).toMillis();
+        Files.setLastModifiedTime(json, FileTime.fromMillis(System.currentTimeMillis() + 5000));
+        OemPackIndex.open(json);
+        assertEquals(built, Files.getLastModifiedTime(OemPackIndex.indexPath(json)).toMillis());
+
+        Files.writeString(json, pack("Voice assistant, safe to disable"));
+        assertEquals("Voice assistant, safe to disable", OemPackIndex.open(json).get("com.samsung.android.bixby.agent").reason());
+    }
+
+    @Test
+    void namespacePatternsMostSpecificWins() throws Exception {
+        Path dir = Files.createTempDirectory("packs");
+        Path json = dir.resolve("xiaomi.json");
+        Files.writeString(json, "{\"packages\": [\n" +
+                "  {\"pkg\": \"com.miui.*\", \"recommendedAction\": \"keep\", \"risk\": \"high\"},\n" +
+                "  {\"pkg\": \"com.miui.analytics.*\", \"recommendedAction\": \"disable\", \"risk\": \"low\"},\n" +
+                "  {\"pkg\": \"com.miui.analytics.core\", \"recommendedAction\": \"uninstall\", \"risk\": \"low\"}\n" +
+                "]}\n");
+
+        for (OemPack pack : new OemPack[]{OemPackIndex.open(json), OemPack.of(SimpleOemPackLoader.extractPackages(Files.readString(json)))}) {
+            assertEquals("uninstall", pack.get("com.miui.analytics.core").action().label());
+            assertEquals("disable", pack.get("com.miui.analytics.core.sub").action().label());
+            assertEquals("disable", pack.get("com.miui.analytics").action().label());
+            assertEquals("keep", pack.get("com.miui.home").action().label());
+            assertNull(pack.get("com.miuix.app"));
+            assertNull(pack.get("com"));
+        }
+    }
+}
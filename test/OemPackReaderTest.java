@@ -0,0 +1,43 @@
+import core.OemPackReader;
+import core.Recommendation;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/** OEM pack parsing, including input the old regex extraction got wrong. */
+public class OemPackReaderTest {
+
+    @Test
+    void readsEntriesWithEscapesAndNestedFields() throws IOException {
+        String json = "\uFEFF{\n" +
+                "  \"oem\": \"Samsung\",\n" +
+                "  \"meta\": {\"packages\": [\"not-these\"], \"count\": 3},\n" +
+                "  \"packages\": [\n" +
+                "    {\"pkg\": \"com.samsung.android.bixby.agent\", \"recommendedAction\": \"disable\", \"risk\": \"low\",\n" +
+                "     \"reason\": \"Voice assistant {\\\"Hi Bixby\\\"} \\u2013 safe\\nto disable\", \"tags\": {\"a\": [1, {\"b\": \"}\"}]}},\n" +
+                "    {\"pkg\": \"com.sec.android.app.sbrowser\", \"risk\": null, \"minSdk\": 28, \"system\": true},\n" +
+                "    {\"label\": \"no pkg\"},\n" +
+                "    {}\n" +
+                "  ]\n" +
+                "}\n";
+        Map<String, Recommendation> map = OemPackReader.read(new StringReader(json));
+        assertEquals(2, map.size());
+
+        Recommendation bixby = map.get("com.samsung.android.bixby.agent");
+        assertEquals(Recommendation.Action.DISABLE, bixby.action());
+        assertEquals(Recommendation.Risk.LOW, bixby.risk());
+        assertEquals("Voice assistant {\"Hi Bixby\"} \u2013 safe\nto disable", bixby.reason());
+        assertSame(Recommendation.EMPTY, map.get("com.sec.android.app.sbrowser"));
+    }
+
+    @Test
+    void rejectsTruncatedPack() {
+        String json = "{\"packages\": [{\"pkg\": \"com.a\", \"reason\": \"cut off";
+        IOException e = assertThrows(IOException.class, () -> OemPackReader.read(new StringReader(json)));
+        assertTrue(e.getMessage().contains("unterminated string"));
+    }
+}
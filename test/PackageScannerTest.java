@@ -0,0 +1,214 @@
+import core.AdbRunner;
+import core.CommandResult;
+import core.PackageInfo;
+import core.PackageScanner;
+import core.ScanDiff;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/** Package scan parsing against canned adb output. */
+public class PackageScannerTest {
+
+    private static AdbRunner fakeStreaming(String output) {
+        return new AdbRunner("adb") {
+            @Override
+            public CommandResult stream(Consumer<String> onLine, String... args) {
+                output.lines().forEach(onLine);
+                return new CommandResult(0, "", "");
+            }
+        };
+    }
+
+    @Test
+    void parsesDumpsysPackageInOnePass() {
+        String dumpsys = "Database versions:\n" +
+                "  Internal:\n" +
+                "    sdkVersion=34 databaseVersion=3\n" +
+                "\n" +
+                "Packages:\n" +
+                "  Package [com.samsung.android.bixby.agent] (a1b2c3):\n" +
+                "    userId=10123\n" +
+                "    pkg=Package{d4e5 com.samsung.android.bixby.agent}\n" +
+                "    codePath=/system/priv-app/BixbyAgent\n" +
+                "    versionCode=340600100 minSdk=30 targetSdk=34\n" +
+                "    flags=[ SYSTEM HAS_CODE ALLOW_CLEAR_USER_DATA UPDATED_SYSTEM_APP ]\n" +
+                "    installerPackageName=com.sec.android.app.samsungapps\n" +
+                "    User 0: ceDataInode=4242 installed=true hidden=false suspended=false stopped=false notLaunched=false enabled=3 instant=false\n" +
+                "    User 10: ceDataInode=0 installed=false hidden=false suspended=false stopped=true notLaunched=true enabled=0 instant=false\n" +
+                "  Package [com.example.app] (f00d):\n" +
+                "    appId=10200\n" +
+                "    codePath=/data/app/~~Zx==/com.example.app-1\n" +
+                "    versionCode=7 minSdk=26 targetSdk=34\n" +
+                "    flags=[ HAS_CODE ALLOW_CLEAR_USER_DATA ]\n" +
+                "    installerPackageName=null\n" +
+                "    User 0: ceDataInode=1 installed=false hidden=false enabled=0\n" +
+                "\n" +
+                "Hidden system packages:\n" +
+                "  Package [com.samsung.android.bixby.agent] (beef):\n" +
+                "    userId=10123\n";
+
+        List<PackageInfo> pkgs = new PackageScanner(fakeStreaming(dumpsys), PackageScanner.Mode.DUMPSYS).listPackages("S1");
+        assertEquals(2, pkgs.size());
+
+        PackageInfo bixby = pkgs.get(0);
+        assertEquals("com.samsung.android.bixby.agent", bixby.pkg());
+        assertTrue(bixby.systemApp());
+        assertEquals(340600100L, bixby.versionCode());
+        assertEquals(10123, bixby.uid());
+        assertEquals("com.sec.android.app.samsungapps", bixby.installer());
+        assertTrue(bixby.hasFlag(PackageInfo.FLAG_SYSTEM));
+        assertTrue(bixby.hasFlag(PackageInfo.FLAG_UPDATED_SYSTEM_APP));
+        assertEquals("Disabled", bixby.stateLabel());
+
+        PackageInfo app = pkgs.get(1);
+        assertFalse(app.systemApp());
+        assertEquals(10200, app.uid());
+        assertEquals(7L, app.versionCode());
+        assertEquals("", app.installer());
+        assertEquals("Uninstalled", app.stateLabel());
+    }
+
+    @Test
+    void mergesListSectionsIntoState() {
+        String output = "::uadb-section disabled\n" +
+                "package:com.facebook.appmanager\n" +
+                "::uadb-section enabled\n" +
+                "package:com.android.settings\n" +
+                "package:com.example.app\n" +
+                "::uadb-section system\n" +
+                "package:com.android.settings\n" +
+                "package:com.facebook.appmanager\n" +
+                "::uadb-section all\n" +
+                "package:/system/priv-app/Settings/Settings.apk=com.android.settings\n" +
+                "package:/system/app/FBAppManager/FBAppManager.apk=com.facebook.appmanager\n" +
+                "  package:/data/app/~~Zx==/com.example.app-1/base.apk=com.example.app\r\n" +
+                "package:/product/app/Weather/Weather.apk=com.oem.weather versionCode:42\n" +
+                "package:/data/app/x.apk=com.foo.\n";
+
+        List<PackageInfo> pkgs = new PackageScanner(fakeStreaming(output)).listPackages("S1");
+        assertEquals(5, pkgs.size());
+        assertEquals("Enabled", pkgs.get(0).stateLabel());
+        assertEquals("Disabled", pkgs.get(1).stateLabel());
+        assertTrue(pkgs.get(1).systemApp());
+        assertEquals("Enabled", pkgs.get(2).stateLabel());
+        assertEquals("com.example.app", pkgs.get(2).pkg());
+        assertEquals("App", pkgs.get(2).label());
+        assertFalse(pkgs.get(2).systemApp());
+        assertEquals("com.oem.weather", pkgs.get(3).pkg());
+        assertEquals(42L, pkgs.get(3).versionCode());
+        assertEquals("Uninstalled", pkgs.get(3).stateLabel());
+        assertEquals("com.foo.", pkgs.get(4).pkg());
+        assertEquals("Com.foo.", pkgs.get(4).label());
+    }
+
+    @Test
+    void rescanReportsOnlyWhatChanged() {
+        String[] outputs = {
+                "::uadb-section disabled\n::uadb-section enabled\npackage:com.a\npackage:com.b\n::uadb-section system\n" +
+                        "::uadb-section all\npackage:/data/app/a/base.apk=com.a\npackage:/data/app/b/base.apk=com.b\n",
+                "::uadb-section disabled\npackage:com.b\n::uadb-section enabled\npackage:com.c\n::uadb-section system\n" +
+                        "::uadb-section all\npackage:/data/app/b/base.apk=com.b\npackage:/data/app/c/base.apk=com.c\n"
+        };
+        int[] call = {0};
+        AdbRunner fake = new AdbRunner("adb") {
+            @Override
+            public CommandResult stream(Consumer<String> onLine, String... args) {
+                outputs[Math.min(call[0]++, outputs.length - 1)].lines().forEach(onLine);
+                return new CommandResult(0, "", "");
+            }
+        };
+        PackageScanner scanner = new PackageScanner(fake);
+
+        ScanDiff first = scanner.rescan("S1", null);
+        assertEquals(2, first.added().size());
+        assertEquals(2, first.total());
+
+        ScanDiff second = scanner.rescan("S1", null);
+        assertEquals(List.of("com.c"), second.added().stream().map(PackageInfo::pkg).toList());
+        assertEquals(List.of("com.a"), second.removed().stream().map(PackageInfo::pkg).toList());
+        assertEquals(1, second.changed().size());
+        assertEquals("Disabled", second.changed().get(0).stateLabel());
+
+        assertTrue(scanner.rescan("S1", null).isEmpty());
+        assertEquals(2, scanner.snapshot("S1").size());
+    }
+
+    @Test
+    void failedDumpsysFallsBackAndKeepsSnapshot() {
+        String dumpsys = "Packages:\n" +
+                "  Package [com.a] (1):\n    userId=10001\n    versionCode=1\n    User 0: installed=true enabled=0\n" +
+                "  Package [com.b] (2):\n    userId=10002\n    versionCode=1\n    User 0: installed=true enabled=0\n" +
+                "  Package [com.c] (3):\n    userId=10003\n    versionCode=1\n    User 0: installed=true enabled=0\n";
+        String partial = dumpsys.substring(0, dumpsys.indexOf("  Package [com.b]"));
+        String list = "::uadb-section disabled\n::uadb-section enabled\npackage:com.a\npackage:com.b\npackage:com.c\n" +
+                "::uadb-section system\n::uadb-section all\npackage:/data/app/a/base.apk=com.a\n" +
+                "package:/data/app/b/base.apk=com.b\npackage:/data/app/c/base.apk=com.c\n";
+        // Per call: output, exit code
+        Object[][] script = {
+                {dumpsys, 0},
+                {partial, 255}, {list.substring(0, list.indexOf("package:/data/app/b")), 1},
+                {partial, 255}, {list, 0}
+        };
+        int[] call = {0};
+        AdbRunner fake = new AdbRunner("adb") {
+            @Override
+            public CommandResult stream(Consumer<String> onLine, String... args) {
+                Object[] step = script[call[0]++];
+                ((String) step[0]).lines().forEach(onLine);
+                return new CommandResult((Integer) step[1], "", "");
+            }
+        };
+        PackageScanner scanner = new PackageScanner(fake, PackageScanner.Mode.DUMPSYS);
+        assertEquals(3, scanner.rescan("S1", null).added().size());
+
+        // dumpsys and pm list both die mid-stream: nothing is reported removed
+        assertTrue(scanner.rescan("S1", null).isFailed());
+        assertEquals(3, scanner.snapshot("S1").size());
+        assertEquals(10002, scanner.snapshot("S1").get("com.b").uid());
+
+        // dumpsys dies after com.a; pm list supplies the rest without repeating it
+        List<String> streamed = new ArrayList<>();
+        ScanDiff diff = scanner.rescan("S1", p -> streamed.add(p.pkg()));
+        assertEquals(List.of("com.a", "com.b", "com.c"), streamed);
+        assertTrue(diff.added().isEmpty());
+        assertTrue(diff.removed().isEmpty());
+        assertEquals(3, scanner.snapshot("S1").size());
+        assertEquals(5, call[0]);
+    }
+
+    @Test
+    void streamsPackagesAndReportsFailureExplicitly() {
+        String list = "::uadb-section disabled\n::uadb-section enabled\npackage:com.a\n::uadb-section system\n" +
+                "::uadb-section all\npackage:/data/app/a/base.apk=com.a\npackage:/data/app/b/base.apk=com.b\n";
+        int[] exitCode = {0};
+        AdbRunner fake = new AdbRunner("adb") {
+            @Override
+            public CommandResult stream(Consumer<String> onLine, String... args) {
+                list.lines().forEach(onLine);
+                return new CommandResult(exitCode[0], "", "");
+            }
+        };
+        PackageScanner scanner = new PackageScanner(fake);
+
+        List<String> streamed = new ArrayList<>();
+        assertEquals(2, scanner.scan("S1", p -> streamed.add(p.pkg())));
+        assertEquals(List.of("com.a", "com.b"), streamed);
+        assertEquals(2, scanner.listPackages("S1").size());
+
+        // The command fails after its output was streamed
+        exitCode[0] = 1;
+        streamed.clear();
+        assertEquals(-1, scanner.scan("S1", p -> streamed.add(p.pkg())));
+        assertEquals(2, streamed.size());
+        assertTrue(scanner.listPackages("S1").isEmpty());
+        ScanDiff failed = scanner.rescan("S1", null);
+        assertTrue(failed.isFailed());
+        assertEquals(-1, failed.total());
+        assertTrue(scanner.snapshot("S1").isEmpty());
+    }
+}
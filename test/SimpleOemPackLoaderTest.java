@@ -0,0 +1,89 @@
+import core.OemPack;
+import core.SimpleOemPackLoader;
+import org.junit.jupiter.api.Test;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/** Pack cache sharing across threads and hot reload of edited packs. */
+public class SimpleOemPackLoaderTest {
+
+    private static String pack(String action) {
+        return "{\"packages\": [{\"pkg\": \"com.samsung.android.bixby.agent\", \"recommendedAction\": \"" + action
+                + "\", \"risk\": \"low\", \"reason\": \"Assistant\"}]}";
+    }
+
+    @Test
+    void concurrentLoadsShareOnePack() throws Exception {
+        Path dir = Files.createTempDirectory("packs");
+        Files.writeString(dir.resolve("samsung.json"), pack("disable"));
+        SimpleOemPackLoader loader = new SimpleOemPackLoader(dir);
+
+        List<CompletableFuture<OemPack>> loads = new ArrayList<>();
+        for (int i = 0; i < 8; i++) {
+            loads.add(CompletableFuture.supplyAsync(() -> loader.loadForManufacturer("Samsung")));
+        }
+        OemPack first = loads.get(0).join();
+        for (CompletableFuture<OemPack> f : loads) assertSame(first, f.join());
+        assertEquals("disable", first.get("com.samsung.android.bixby.agent").action().label());
+    }
+
+    @Test
+    void reloadsEditedPackAndNotifiesListeners() throws Exception {
+        Path dir = Files.createTempDirectory("packs");
+        Path json = dir.resolve("samsung.json");
+        Files.writeString(json, pack("disable"));
+        try (SimpleOemPackLoader loader = new SimpleOemPackLoader(dir)) {
+            assertEquals("disable", loader.loadForManufacturer("samsung").get("com.samsung.android.bixby.agent").action().label());
+
+            CountDownLatch reloaded = new CountDownLatch(1);
+            AtomicReference<String> key = new AtomicReference<>();
+            loader.addReloadListener((packKey, p) -> {
+                if (!"keep".equals(p.get("com.samsung.android.bixby.agent").action().label())) return;
+                key.set(packKey);
+                reloaded.countDown();
+            });
+            loader.startWatching();
+            Files.writeString(json, pack("keep") + "\n");
+
+            // Polling WatchService implementations can take ~10s to notice
+            assertTrue(reloaded.await(30, TimeUnit.SECONDS));
+            assertEquals("samsung", key.get());
+            assertEquals("keep", loader.loadForManufacturer("Samsung").get("com.samsung.android.bixby.agent").action().label());
+        }
+    }
+
+    @Test
+    void picksNewestPackAndLayersSubBrandOverBase() throws Exception {
+        Path dir = Files.createTempDirectory("packs");
+        Files.writeString(dir.resolve("samsung.json"), pack("keep"));
+        Files.writeString(dir.resolve("samsung-20251201.json"), pack("uninstall"));
+        Files.writeString(dir.resolve("samsung-20251113.json"), pack("disable"));
+        Files.writeString(dir.resolve("oppo-20251113.json"), "{\"packages\": [" +
+                "{\"pkg\": \"com.heytap.market\", \"recommendedAction\": \"disable\"}," +
+                "{\"pkg\": \"com.coloros.weather\", \"recommendedAction\": \"keep\"}]}");
+        Files.writeString(dir.resolve("realme.json"), "{\"packages\": [" +
+                "{\"pkg\": \"com.coloros.weather\", \"recommendedAction\": \"uninstall\"}]}");
+        SimpleOemPackLoader loader = new SimpleOemPackLoader(dir);
+
+        assertEquals("uninstall", loader.loadForManufacturer("samsung").get("com.samsung.android.bixby.agent").action().label());
+
+        OemPack realme = loader.loadForManufacturer("realme");
+        assertEquals("uninstall", realme.get("com.coloros.weather").action().label());
+        assertEquals("disable", realme.get("com.heytap.market").action().label());
+
+        // A new release is picked up once the directory changes
+        Files.writeString(dir.resolve("samsung-20260101.json"), pack("keep"));
+        loader.clearCache();
+        assertEquals("keep", loader.loadForManufacturer("Samsung").get("com.samsung.android.bixby.agent").action().label());
+        assertSame(OemPack.EMPTY, loader.loadForManufacturer("Fairphone"));
+    }
+}
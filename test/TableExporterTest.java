@@ -0,0 +1,69 @@
+import core.ActionHistory;
+import core.TableExporter;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.GZIPInputStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/** Streaming export in each format, with gzip and progress. */
+public class TableExporterTest {
+
+    private static List<ActionHistory.Entry> entries(int n) {
+        List<ActionHistory.Entry> list = new ArrayList<>();
+        for (int i = 0; i < n; i++) {
+            list.add(new ActionHistory.Entry(1_700_000_000_000L + i, "S1", "DISABLE", "com.app" + i + (i == 1 ? ",\"q\"\n" : ""), i % 2, 12));
+        }
+        return list;
+    }
+
+    @Test
+    void writesCsvAndJsonLines() throws Exception {
+        Path dir = Files.createTempDirectory("export");
+        Path csv = dir.resolve("history.csv");
+        assertEquals(3, TableExporter.export(csv, "History", ActionHistory.exportColumns(), entries(3), null));
+        List<String> lines = Files.readAllLines(csv);
+        assertEquals("\"Time\",\"Device\",\"Status\",\"Action\",\"Details\",\"Exit Code\",\"Duration (ms)\"", lines.get(0));
+        assertTrue(lines.get(2).contains(",\"com.app1,\"\"q\"\""));
+        assertFalse(Files.exists(dir.resolve("history.csv.tmp")));
+
+        Path jsonl = dir.resolve("history.jsonl");
+        TableExporter.export(jsonl, "History", ActionHistory.exportColumns(), entries(3), null);
+        lines = Files.readAllLines(jsonl);
+        assertEquals(3, lines.size());
+        assertTrue(lines.get(1).contains("\"details\":\"com.app1,\\\"q\\\"\\n\""));
+        assertTrue(lines.get(1).contains("\"exitCode\":\"1\""));
+    }
+
+    @Test
+    void gzipsTextAndReportsProgress() throws Exception {
+        Path file = Files.createTempDirectory("export").resolve("history.txt.gz");
+        long[] last = {0, 0};
+        int[] calls = {0};
+        long n = TableExporter.export(file, "ADB Debloater - Action History", ActionHistory.exportColumns(), entries(10_000),
+                (done, total) -> {
+                    calls[0]++;
+                    last[0] = done;
+                    last[1] = total;
+                });
+        assertEquals(10_000, n);
+        assertEquals(10_000, last[0]);
+        assertEquals(10_000, last[1]);
+        assertTrue(calls[0] >= 3);
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (InputStream in = new GZIPInputStream(Files.newInputStream(file))) {
+            in.transferTo(bytes);
+        }
+        String text = bytes.toString(StandardCharsets.UTF_8);
+        assertTrue(text.startsWith("ADB Debloater - Action History\n"));
+        assertEquals(10_000 + 3, text.lines().count());
+    }
+}